@@ -23,6 +23,7 @@ import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import static javax.swing.WindowConstants.DO_NOTHING_ON_CLOSE;
 import static javax.swing.WindowConstants.HIDE_ON_CLOSE;
@@ -147,6 +148,38 @@ public class App {
         return App.hasArgument("sync");
     }
 
+    public static double getBlockingTimeout() {
+        try {
+            return Double.valueOf(getArgumentValue("sync_timeout").trim());
+        } catch (Exception ex) {
+            return 1.0;
+        }
+    }
+
+    public static SampleScheduler.Missed getMissedTicks() {
+        try {
+            return SampleScheduler.Missed.valueOf(getArgumentValue("missed").trim().toLowerCase());
+        } catch (Exception ex) {
+            return SampleScheduler.Missed.skip;
+        }
+    }
+
+    public static boolean isTickTime() {
+        return App.hasArgument("tick_time");
+    }
+
+    public static boolean isWatch() {
+        return App.hasArgument("watch");
+    }
+
+    public static boolean isCapture() {
+        return App.hasArgument("capture");
+    }
+
+    public static boolean isBlockingHold() {
+        return App.hasArgument("sync_hold");
+    }
+
     public static boolean isDebug(){
         return App.hasArgument("debug");
     }
@@ -197,8 +230,82 @@ public class App {
     public static boolean isAntiAliasing() {
         return hasArgument("aa");
     }
+
+    public static boolean isJournal() {
+        return hasArgument("journal");
+    }
+
+    public static boolean isBackgroundRendering() {
+        return !hasArgument("edt_render");
+    }
+
+    static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    public static int getQueueSize() {
+        try {
+            return Integer.valueOf(getArgumentValue("queue").trim());
+        } catch (Exception ex) {
+            return DEFAULT_QUEUE_SIZE;
+        }
+    }
+
+    public static SampleQueue.Overflow getQueueOverflow() {
+        try {
+            return SampleQueue.Overflow.valueOf(getArgumentValue("overflow").trim().toLowerCase());
+        } catch (Exception ex) {
+            return SampleQueue.Overflow.drop;
+        }
+    }
     
     
+    static MetadataCache metadataCache;
+
+    /**
+     * The metadata cache file is set with -metadata_cache, by default in the
+     * home folder. Set to "none" to disable the cache.
+     */
+    public static synchronized MetadataCache getMetadataCache() {
+        if (metadataCache == null) {
+            String name = getArgumentValue("metadata_cache");
+            File file = null;
+            if (name == null) {
+                file = Paths.get(getHome(), ".jstriptool", "metadata").toFile();
+            } else if (!name.isBlank() && !name.trim().equalsIgnoreCase("none")) {
+                file = new File(expandUserHome(name.trim()));
+            }
+            metadataCache = new MetadataCache(file);
+        }
+        return metadataCache;
+    }
+
+    static Recorder recorder;
+    static boolean recorderCreated;
+
+    /**
+     * Recorder of the acquired samples if the record option is set, or null.
+     */
+    public static synchronized Recorder getRecorder() {
+        if (!recorderCreated) {
+            recorderCreated = true;
+            String folder = getArgumentValue("record");
+            if ((folder != null) && !folder.isBlank()) {
+                recorder = new Recorder(new File(expandUserHome(folder.trim())),
+                        (long) (getArgumentDouble("record_size", 100) * 1024 * 1024),
+                        (long) (getArgumentDouble("record_time", 60) * 60 * 1000),
+                        (long) (getArgumentDouble("record_keep", 7) * 24 * 3600 * 1000));
+            }
+        }
+        return recorder;
+    }
+
+    static double getArgumentDouble(String name, double defaultValue) {
+        try {
+            return Double.valueOf(getArgumentValue(name).trim());
+        } catch (Exception ex) {
+            return defaultValue;
+        }
+    }
+
     public static boolean isMac(){
         return System.getProperty("os.name").toLowerCase().contains("mac");
     }
@@ -230,6 +337,7 @@ public class App {
         System.out.println("\t-cmd=\"...\"\tList of commands for changing the plot configuration (';' separated):");
         System.out.println("\t\t\t  add <channel>                    (add a plot)");
         System.out.println("\t\t\t  del <channel or index>           (remove a plot)");
+        System.out.println("\t\t\t  move <channel or index> <index>  (move a plot)");
         System.out.println("\t\t\t  min <channel or index> <value>   (set plot minimum value)");
         System.out.println("\t\t\t  max <channel or index> <value>   (set plot maximum value)");
         System.out.println("\t\t\t  range <channel or index> <range> (set plot range)");
@@ -238,6 +346,15 @@ public class App {
         System.out.println("\t\t\t  span <time in seconds>           (set plot time span)");
         System.out.println("\t\t\t  poll <time in seconds>           (set channel update interval - 0 for monitored)");
         System.out.println("\t\t\t  redraw <time in seconds>         (set plot redraw interval)");
+        System.out.println("\t\t\t  stats                            (display the sample queue and scheduler counters and channel timeouts)");
+        System.out.println("\t\t\t  save <file>                      (save the plot data: binary if extension is .jsd, otherwise text)");
+        System.out.println("\t\t\t  open <file>                      (stop and display a binary data file)");
+        System.out.println("\t\t\t  replay <file> [speed]            (play back a binary data file: speed factor, 0 for maximum)");
+        System.out.println("\t\t\t  speed <factor>                   (set the replay speed)");
+        System.out.println("\t\t\t  pause                            (pause the replay)");
+        System.out.println("\t\t\t  resume                           (resume the replay)");
+        System.out.println("\t\t\t  seek <time in seconds>           (move the replay, from the beginning of the file)");
+        System.out.println("\t\t\t  live                             (end the replay and restart the acquisition)");
         System.out.println("\t\t\tCommands can be entered in the CLI using the same format");
         System.out.println("\nEPICS CA arguments: ");
         for (ProtocolConfiguration.PropertyNames cfg : ProtocolConfiguration.PropertyNames.values()) {
@@ -524,6 +641,33 @@ public class App {
         }        
     }
     
+    interface Command {
+
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs a command changing the series in the event dispatch thread, which
+     * appends and renders them, rethrowing its exception.
+     */
+    static void invokeAndWait(Command command) throws Exception {
+        if (SwingUtilities.isEventDispatchThread()) {
+            command.run();
+            return;
+        }
+        Exception[] error = new Exception[1];
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                command.run();
+            } catch (Exception ex) {
+                error[0] = ex;
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+
     static Object executeStatement(String statement) throws Exception{
         statement = statement.trim();
         if (!statement.isBlank()){
@@ -531,11 +675,14 @@ public class App {
             String op = tokens[0];
             switch (op){
                 case "add":                            
-                    configFrame.addChannel(tokens[1]);
+                    invokeAndWait(() -> configFrame.addChannel(tokens[1]));
                     return "Ok";    
                 case "del":   
-                    configFrame.removeChannel(configFrame.getIndex(tokens[1]));
+                    invokeAndWait(() -> configFrame.removeChannel(configFrame.getIndex(tokens[1])));
                     return "Ok";    
+                case "move":
+                    invokeAndWait(() -> configFrame.moveChannel(configFrame.getIndex(tokens[1]), Integer.valueOf(tokens[2])));
+                    return "Ok";
                 case "range":   
                     configFrame.setChannelMin(configFrame.getIndex(tokens[1]), Double.valueOf(tokens[2]));
                     configFrame.setChannelMax(configFrame.getIndex(tokens[1]), Double.valueOf(tokens[3]));
@@ -570,6 +717,34 @@ public class App {
                 case "redraw":
                     configFrame.setRedrawInterval(Double.valueOf(tokens[1]));
                     return "Ok";             
+                case "stats":
+                    return PlotFrame.instance.getStats();
+                case "save":
+                    PlotFrame.instance.saveData(tokens[1]);
+                    return "Ok";
+                case "open":
+                    PlotFrame.instance.openData(tokens[1]);
+                    return "Ok";
+                case "replay":
+                    PlotFrame.instance.startReplay(tokens[1], (tokens.length > 2) ? Double.valueOf(tokens[2]) : 1.0);
+                    return "Ok";
+                case "speed":
+                    PlotFrame.instance.getReplay().setSpeed(Double.valueOf(tokens[1]));
+                    return "Ok";
+                case "pause":
+                    PlotFrame.instance.getReplay().setPaused(true);
+                    return "Ok";
+                case "resume":
+                    PlotFrame.instance.getReplay().setPaused(false);
+                    return "Ok";
+                case "seek":
+                    PlotFrame.instance.getReplay().seek(Double.valueOf(tokens[1]));
+                    return "Ok";
+                case "live":
+                    SwingUtilities.invokeAndWait(() -> {
+                        PlotFrame.instance.endReplay();
+                    });
+                    return "Ok";
                 default:
                     return "Invalid command";
             }                    
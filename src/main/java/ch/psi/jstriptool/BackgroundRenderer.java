@@ -0,0 +1,292 @@
+package ch.psi.jstriptool;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.Area;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import org.jfree.chart.ChartRenderingInfo;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.entity.StandardEntityCollection;
+import org.jfree.chart.plot.XYPlot;
+
+/**
+ * Draws a chart into an image in a background thread. Requests are coalesced:
+ * if the thread is busy only the latest one is rendered. Completed frames are
+ * delivered in the event dispatch thread. The chart is drawn holding the lock,
+ * which must also be held by other threads changing the plot structure.
+ * If a request is incremental and the only change since the previous frame is
+ * the domain axis moved by a whole number of pixels, the previous frame is
+ * shifted and only the exposed columns, the axes and the chart borders are
+ * drawn again.
+ */
+public abstract class BackgroundRenderer {
+
+    static final Logger logger = Logger.getLogger(BackgroundRenderer.class.getName());
+
+    //Redrawn columns at each side of the scrolled area, must fit half of a tick label
+    static final int SCROLL_MARGIN = 64;
+
+    /**
+     * Rendered image. If scrolled is not null the frame is the previous one
+     * with the scrolled area shifted left by shift pixels, and the rest
+     * redrawn.
+     */
+    public static class Frame {
+
+        final long id;
+        final long previousId;
+        final BufferedImage image;
+        final ChartRenderingInfo info;
+        final Rectangle scrolled;
+        final int shift;
+        final State state;
+
+        Frame(long id, long previousId, BufferedImage image, ChartRenderingInfo info, Rectangle scrolled, int shift, State state) {
+            this.id = id;
+            this.previousId = previousId;
+            this.image = image;
+            this.info = info;
+            this.scrolled = scrolled;
+            this.shift = shift;
+            this.state = state;
+        }
+
+        /**
+         * Id of the frame this one was scrolled from.
+         */
+        public long getPreviousId() {
+            return previousId;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * Regions drawn in this frame: the whole image if not scrolled.
+         */
+        public Rectangle[] getDirtyRegions() {
+            int w = image.getWidth();
+            int h = image.getHeight();
+            if (scrolled == null) {
+                return new Rectangle[]{new Rectangle(0, 0, w, h)};
+            }
+            return new Rectangle[]{
+                new Rectangle(0, 0, w, scrolled.y),
+                new Rectangle(0, scrolled.y + scrolled.height, w, h - scrolled.y - scrolled.height),
+                new Rectangle(0, scrolled.y, scrolled.x, scrolled.height),
+                new Rectangle(scrolled.x + scrolled.width, scrolled.y, w - scrolled.x - scrolled.width, scrolled.height)
+            };
+        }
+
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        public ChartRenderingInfo getInfo() {
+            return info;
+        }
+
+        public Rectangle getScrolled() {
+            return scrolled;
+        }
+
+        public int getShift() {
+            return shift;
+        }
+    }
+
+    /**
+     * Plot state compared to decide if a frame can be scrolled.
+     */
+    static class State {
+
+        final int width;
+        final int height;
+        final double lower;
+        final double upper;
+        final String axes;
+
+        State(XYPlot plot, int width, int height) {
+            this.width = width;
+            this.height = height;
+            lower = plot.getDomainAxis().getLowerBound();
+            upper = plot.getDomainAxis().getUpperBound();
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < plot.getRangeAxisCount(); i++) {
+                ValueAxis axis = plot.getRangeAxis(i);
+                if (axis != null) {
+                    sb.append(i).append(axis.getClass().getName()).append(axis.getRange())
+                            .append(axis.isVisible()).append(axis.getLabel()).append(";");
+                }
+            }
+            axes = sb.toString();
+        }
+
+        /**
+         * Number of pixels the domain moved since the previous state, or -1
+         * if not a whole number.
+         */
+        int getShift(State previous, double dataWidth) {
+            double length = upper - lower;
+            if ((width != previous.width) || (height != previous.height) || !axes.equals(previous.axes)
+                    || (Math.abs(length - (previous.upper - previous.lower)) > length * 1e-9)) {
+                return -1;
+            }
+            double shift = (upper - previous.upper) * dataWidth / (upper - lower);
+            long ret = Math.round(shift);
+            return ((ret < 0) || (Math.abs(shift - ret) > 1e-3)) ? -1 : (int) ret;
+        }
+    }
+
+    final JFreeChart chart;
+    final Object lock;
+    final Thread thread;
+    int width;
+    int height;
+    boolean entities;
+    boolean incremental;
+    boolean requested;
+    volatile boolean closed;
+    Frame previous;
+    long frames;
+
+    public BackgroundRenderer(JFreeChart chart, Object lock) {
+        this.chart = chart;
+        this.lock = lock;
+        thread = new Thread(() -> {
+            run();
+        }, "Chart renderer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Requests a frame of the given size, creating entities for tooltips if
+     * entities is true. If incremental is false the frame is fully drawn
+     * (plot configuration changed).
+     */
+    public synchronized void request(int width, int height, boolean entities, boolean incremental) {
+        //Pending full request cannot become incremental
+        this.incremental = (requested ? this.incremental : true) && incremental;
+        this.width = width;
+        this.height = height;
+        this.entities = entities;
+        requested = true;
+        notifyAll();
+    }
+
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    void run() {
+        while (!closed) {
+            int w, h;
+            boolean e, inc;
+            synchronized (this) {
+                while (!requested && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                requested = false;
+                w = width;
+                h = height;
+                e = entities;
+                inc = incremental;
+            }
+            if (closed) {
+                break;
+            }
+            Frame frame;
+            try {
+                synchronized (lock) {
+                    onStart();
+                    try {
+                        frame = render(w, h, e, inc);
+                    } finally {
+                        onFinish();
+                    }
+                }
+            } catch (Exception ex) {
+                //Frame dropped: the next request renders again
+                logger.log(Level.FINE, null, ex);
+                previous = null;
+                continue;
+            }
+            previous = frame;
+            SwingUtilities.invokeLater(() -> {
+                if (!closed) {
+                    onRendered(frame);
+                }
+            });
+        }
+    }
+
+    Frame render(int w, int h, boolean entities, boolean incremental) {
+        State state = new State(chart.getXYPlot(), w, h);
+        if (incremental && (previous != null) && (previous.info.getEntityCollection() == null) && !entities) {
+            Rectangle2D dataArea = previous.info.getPlotInfo().getDataArea();
+            Rectangle2D plotArea = previous.info.getPlotInfo().getPlotArea();
+            int shift = state.getShift(previous.state, dataArea.getWidth());
+            int left = (int) Math.ceil(dataArea.getMinX()) + SCROLL_MARGIN;
+            int right = (int) Math.floor(dataArea.getMaxX()) - SCROLL_MARGIN - shift;
+            int top = (int) Math.ceil(plotArea.getMinY());
+            int bottom = (int) Math.floor(plotArea.getMaxY());
+            if ((shift >= 0) && (right > left) && (bottom > top)) {
+                Rectangle scrolled = new Rectangle(left, top, right - left, bottom - top);
+                Frame frame = draw(w, h, false, state, scrolled, shift);
+                if (frame.info.getPlotInfo().getDataArea().equals(dataArea)) {
+                    return frame;
+                }
+            }
+        }
+        return draw(w, h, entities, state, null, 0);
+    }
+
+    Frame draw(int w, int h, boolean entities, State state, Rectangle scrolled, int shift) {
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        ChartRenderingInfo info = new ChartRenderingInfo(entities ? new StandardEntityCollection() : null);
+        Frame frame = new Frame(++frames, (scrolled == null) ? -1 : previous.id, image, info, scrolled, shift, state);
+        Graphics2D g = image.createGraphics();
+        try {
+            if (scrolled != null) {
+                g.drawImage(previous.image, 0, 0, null);
+                g.copyArea(scrolled.x + shift, scrolled.y, scrolled.width, scrolled.height, -shift, 0);
+                Area dirty = new Area();
+                for (Rectangle r : frame.getDirtyRegions()) {
+                    dirty.add(new Area(r));
+                }
+                g.clip(dirty);
+            }
+            chart.draw(g, new Rectangle2D.Double(0, 0, w, h), null, info);
+        } finally {
+            g.dispose();
+        }
+        return frame;
+    }
+
+    /**
+     * Called in the render thread before drawing, holding the lock.
+     */
+    protected abstract void onStart();
+
+    /**
+     * Called in the render thread after drawing, holding the lock.
+     */
+    protected abstract void onFinish();
+
+    /**
+     * Called in the event dispatch thread with a completed frame.
+     */
+    protected abstract void onRendered(Frame frame);
+}
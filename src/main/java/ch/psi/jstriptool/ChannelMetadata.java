@@ -0,0 +1,113 @@
+package ch.psi.jstriptool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.epics.ca.Channel;
+import org.epics.ca.Context;
+import org.epics.ca.data.Graphic;
+
+/**
+ * Display metadata of a channel. Fetched in batches: the connections and the
+ * Graphic and .DESC reads of all channels are issued at once and collected
+ * against a single deadline.
+ */
+public class ChannelMetadata {
+
+    static final Logger logger = Logger.getLogger(ChannelMetadata.class.getName());
+
+    public static final long DEFAULT_TIMEOUT = 2000; //ms, for the whole batch
+
+    public final String name;
+    public final String units;
+    public final int precision;
+    public final double min;
+    public final double max;
+    public final String desc;
+    public final long time; //Epoch ms of the read
+
+    ChannelMetadata(String name, String units, int precision, double min, double max, String desc, long time) {
+        this.name = name;
+        this.units = units == null ? "" : units;
+        this.precision = precision;
+        this.min = min;
+        this.max = (max <= min) ? min + 1 : max;
+        this.desc = desc == null ? "" : desc;
+        this.time = time;
+    }
+
+    ChannelMetadata(String name, Graphic<?, ?> g, String desc) {
+        this(name, g.getUnits(), ((Number) g.getPrecision()).intValue(),
+                ((Number) g.getLowerDisplay()).doubleValue(), ((Number) g.getUpperDisplay()).doubleValue(),
+                desc, System.currentTimeMillis());
+    }
+
+    /**
+     * Placeholder for a channel whose metadata was not read yet.
+     */
+    public static ChannelMetadata getDefault(String name) {
+        return new ChannelMetadata(name, "", 0, 0.0, 1.0, "", 0);
+    }
+
+    public static ChannelMetadata fetch(Context context, String name) {
+        return fetch(context, new String[]{name}, true, DEFAULT_TIMEOUT)[0];
+    }
+
+    /**
+     * Returns the metadata of the channels, in the same order. Entries are
+     * null if the name is blank or the channel did not connect in time. A
+     * missing description does not fail the entry.
+     */
+    public static ChannelMetadata[] fetch(Context context, String[] names, boolean desc, long timeout) {
+        ChannelMetadata[] ret = new ChannelMetadata[names.length];
+        List<Channel<?>> opened = new ArrayList<>();
+        List<CompletableFuture<Graphic<Double, Double>>> graphics = new ArrayList<>(Collections.nCopies(names.length, null));
+        List<CompletableFuture<String>> descs = new ArrayList<>(Collections.nCopies(names.length, null));
+        try {
+            for (int i = 0; i < names.length; i++) {
+                if ((names[i] == null) || names[i].isBlank()) {
+                    continue;
+                }
+                String name = names[i].trim();
+                Channel<Double> channel = context.createChannel(name, Double.class);
+                opened.add(channel);
+                graphics.set(i, channel.connectAsync().thenCompose(c -> c.<Graphic<Double, Double>>getAsync(Graphic.class)));
+                if (desc) {
+                    Channel<String> channelDesc = context.createChannel(name + ".DESC", String.class);
+                    opened.add(channelDesc);
+                    descs.set(i, channelDesc.connectAsync().thenCompose(c -> c.getAsync()));
+                }
+            }
+            long deadline = System.nanoTime() + timeout * 1000000L;
+            for (int i = 0; i < names.length; i++) {
+                if (graphics.get(i) != null) {
+                    try {
+                        Graphic<Double, Double> g = graphics.get(i).get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                        String description = "";
+                        if (descs.get(i) != null) {
+                            try {
+                                description = descs.get(i).get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                            } catch (Exception ex) {
+                            }
+                        }
+                        ret[i] = new ChannelMetadata(names[i].trim(), g, description);
+                    } catch (Exception ex) {
+                        logger.log(Level.FINE, "Cannot read metadata of " + names[i], ex);
+                    }
+                }
+            }
+        } finally {
+            for (Channel<?> channel : opened) {
+                try {
+                    channel.close();
+                } catch (Exception ex) {
+                }
+            }
+        }
+        return ret;
+    }
+}
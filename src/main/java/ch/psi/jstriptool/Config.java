@@ -10,13 +10,13 @@ import java.nio.charset.MalformedInputException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 import org.apache.commons.lang3.StringUtils;
 import org.epics.ca.Channel;
 import org.epics.ca.Context;
-import org.epics.ca.data.Graphic;
 
 /**
  *
@@ -25,7 +25,8 @@ public class Config {
 
     public static final String EXTENSION = "stp";
     public static final String VERSION = "1.2";
-    public static final int MAX_NUMBER_PLOTS = 10;
+    public static final int MAX_NUMBER_PLOTS = 1000;
+    public static final int LEGACY_NUMBER_PLOTS = 10; //Curves and colors of StripTool files
 
     public static class DeepColor {
 
@@ -129,7 +130,7 @@ public class Config {
     DeepColor foreground = new DeepColor(0, 0, 0);
     DeepColor background = new DeepColor(65535, 65535, 65535);
     DeepColor grid = new DeepColor(49087, 49087, 49087);
-    DeepColor[] colors = new DeepColor[]{
+    static final DeepColor[] DEFAULT_COLORS = new DeepColor[]{
         new DeepColor(0, 0, 65535),
         new DeepColor(27499, 36494, 8995),
         new DeepColor(42405, 10794, 10794),
@@ -141,16 +142,54 @@ public class Config {
         new DeepColor(48316, 36751, 36751),
         new DeepColor(39578, 52685, 12850),};
 
+    /**
+     * Default color of a curve: the StripTool colors, followed by colors with
+     * hues spaced by the golden angle so that neighbours stay distinct.
+     */
+    static DeepColor getPaletteColor(int index) {
+        if (index < DEFAULT_COLORS.length) {
+            return DEFAULT_COLORS[index];
+        }
+        int i = index - DEFAULT_COLORS.length;
+        float hue = (float) ((i * 0.618033988749895) % 1.0);
+        float saturation = (i % 2 == 0) ? 0.9f : 0.6f;
+        float brightness = ((i / 2) % 2 == 0) ? 0.75f : 0.9f;
+        return new DeepColor(Color.getHSBColor(hue, saturation, brightness));
+    }
+
+    DeepColor[] colors = Arrays.copyOf(DEFAULT_COLORS, LEGACY_NUMBER_PLOTS);
+
     //Option
     GridVisibility gridXon = GridVisibility.some;
     GridVisibility gridYon = GridVisibility.some;
     LabelColorAxisY axisYcolorStat = LabelColorAxisY.selectedCurve;
     int graphLineWidth = 2;
-    Curve[] curves = new Curve[MAX_NUMBER_PLOTS];
+    Curve[] curves = new Curve[LEGACY_NUMBER_PLOTS];
+
+    /**
+     * Grows the curve and color arrays to hold the number of curves.
+     */
+    void ensureCapacity(int size) {
+        size = Math.min(size, MAX_NUMBER_PLOTS);
+        if (curves.length < size) {
+            curves = Arrays.copyOf(curves, Math.min(Math.max(size, 2 * curves.length), MAX_NUMBER_PLOTS));
+        }
+        if (colors.length < curves.length) {
+            int length = colors.length;
+            colors = Arrays.copyOf(colors, curves.length);
+            for (int i = length; i < colors.length; i++) {
+                colors[i] = getPaletteColor(i);
+            }
+        }
+    }
+
+    DeepColor getColor(int index) {
+        return (index < colors.length) ? colors[index] : getPaletteColor(index);
+    }
 
     List<Integer> getCurvesIndexes() {
         List<Integer> ret = new ArrayList<>();
-        for (int i = 0; i < MAX_NUMBER_PLOTS; i++) {
+        for (int i = 0; i < curves.length; i++) {
             if (curves[i] != null) {
                 ret.add(i);
             }
@@ -160,7 +199,7 @@ public class Config {
     
     List<String> getCurvesNames() {
         List<String> ret = new ArrayList<>();
-        for (int i = 0; i < MAX_NUMBER_PLOTS; i++) {
+        for (int i = 0; i < curves.length; i++) {
             if (curves[i] != null) {
                 ret.add(curves[i].name);
             }
@@ -169,27 +208,38 @@ public class Config {
     }    
 
     int getNumberCurves() {
-        for (int i = 0; i < MAX_NUMBER_PLOTS; i++) {
+        for (int i = 0; i < curves.length; i++) {
             if (curves[i] == null) {
                 return i;
             }
         }
-        return MAX_NUMBER_PLOTS;
+        return curves.length;
     }
 
     Curve removeCurve(int index) {
-        if ((index >= 0) && (index < MAX_NUMBER_PLOTS)) {
+        if ((index >= 0) && (index < curves.length)) {
             Curve ret = curves[index];
-            System.arraycopy(curves, index + 1, curves, index, MAX_NUMBER_PLOTS - index - 1);
-            curves[MAX_NUMBER_PLOTS - 1] = null;
+            System.arraycopy(curves, index + 1, curves, index, curves.length - index - 1);
+            curves[curves.length - 1] = null;
             return ret;
         }
         return null;
     }
 
+    void moveCurve(int from, int to) {
+        Curve curve = curves[from];
+        if (from < to) {
+            System.arraycopy(curves, from + 1, curves, from, to - from);
+        } else {
+            System.arraycopy(curves, to, curves, to + 1, from - to);
+        }
+        curves[to] = curve;
+    }
+
     Curve insertCurve(int index) {
-        if ((index >= 0) && (index < MAX_NUMBER_PLOTS)) {
-            System.arraycopy(curves, index, curves, index + 1, MAX_NUMBER_PLOTS - index - 1);
+        ensureCapacity(getNumberCurves() + 1);
+        if ((index >= 0) && (index < curves.length)) {
+            System.arraycopy(curves, index, curves, index + 1, curves.length - index - 1);
             curves[index] = new Curve();
             return curves[index];
         }
@@ -265,7 +315,10 @@ public class Config {
                             default:
                                 if (code[2].startsWith("Color")) {
                                     index = Integer.valueOf(code[2].substring(5));
-                                    colors[index - 1] = c;
+                                    ensureCapacity(index);
+                                    if ((index > 0) && (index <= colors.length)) {
+                                        colors[index - 1] = c;
+                                    }
                                 }
                                 break;
                         }
@@ -310,6 +363,10 @@ public class Config {
                         break;
                     case "Curve":
                         index = Integer.valueOf(code[2]);
+                        ensureCapacity(index + 1);
+                        if (index >= curves.length) {
+                            break;
+                        }
                         if (curves[index] == null) {
                             curves[index] = new Curve();
                         }
@@ -367,36 +424,22 @@ public class Config {
         }
     }
 
-    public void load(String[] channels) throws Exception {
+    public void load(String[] channels, Context context) throws Exception {
         timespan = 20 * 60;
-        try (Context context = new Context(App.getCaProperties())) {
-            for (int i = 0; i < channels.length; i++) {
-                if ((channels[i]!=null) && !channels[i].isBlank()){
-                    curves[i] = new Curve();
-                    String channelName = channels[i].trim();
-                    curves[i].name = channelName;
-                    try {
-                        Channel<Double> channel = context.createChannel(channelName, Double.class);
-                        channel.connectAsync().get(2, TimeUnit.SECONDS);
-                        Graphic g = channel.get(Graphic.class);
-                        String units = g.getUnits() == null ? "" : g.getUnits();
-                        Integer precision = ((Number) g.getPrecision()).intValue();
-                        Double min = ((Number) g.getLowerDisplay()).doubleValue();
-                        Double max = ((Number) g.getUpperDisplay()).doubleValue();
-                        if (max <= min) {
-                            max = min + 1;
-                        }
-
-                        curves[i].min = min;
-                        curves[i].max = max;
-                        curves[i].comment = "";
-                        curves[i].precision = precision;
-                        curves[i].units = units;
-                        curves[i].plotStatus = true;
-                    } catch (Exception ex) {
-                        curves[i].plotStatus = false;
-                    }
-                }
+        ensureCapacity(channels.length);
+        ChannelMetadata[] metadata = App.getMetadataCache().fetch(context, channels);
+        for (int i = 0; i < Math.min(channels.length, curves.length); i++) {
+            if ((channels[i]!=null) && !channels[i].isBlank()){
+                curves[i] = new Curve();
+                curves[i].name = channels[i].trim();
+                //Channels not in the cache get defaults until read in the background
+                ChannelMetadata m = (metadata[i] != null) ? metadata[i] : ChannelMetadata.getDefault(curves[i].name);
+                curves[i].min = m.min;
+                curves[i].max = m.max;
+                curves[i].comment = m.desc;
+                curves[i].precision = m.precision;
+                curves[i].units = m.units;
+                curves[i].plotStatus = true;
             }
         }
     }
@@ -429,8 +472,9 @@ public class Config {
             write(out, "Strip.Color.Background", background);
             write(out, "Strip.Color.Foreground", foreground);
             write(out, "Strip.Color.Grid", grid);
-            for (int i = 0; i < MAX_NUMBER_PLOTS; i++) {
-                write(out, "Strip.Color.Color" + (i + 1), colors[i]);
+            //Colors of the StripTool curves are always written
+            for (int i = 0; i < Math.max(LEGACY_NUMBER_PLOTS, getNumberCurves()); i++) {
+                write(out, "Strip.Color.Color" + (i + 1), getColor(i));
             }
             write(out, "Strip.Option.GridXon", gridXon.ordinal());
             write(out, "Strip.Option.GridYon", gridYon.ordinal());
@@ -505,13 +549,12 @@ public class Config {
         config.foreground = foreground;
         config.background = background;
         config.grid = grid;
-        for (int i = 0; i < config.colors.length; i++) {
-            config.colors[i] = colors[i] == null ? null : colors[i];
-        }
+        config.colors = Arrays.copyOf(colors, colors.length);
         config.gridXon = gridXon;
         config.gridYon = gridYon;
         config.axisYcolorStat = axisYcolorStat;
         config.graphLineWidth = graphLineWidth;
+        config.curves = new Curve[curves.length];
         for (int i = 0; i < config.curves.length; i++) {
             config.curves[i] = curves[i] == null ? null : curves[i].clone();
         }
@@ -520,8 +563,7 @@ public class Config {
 
     public static String getChannelDesc(Context context, String channelName) {
         String desc = "";
-        try {
-            Channel<String> channelDesc = context.createChannel(channelName + ".DESC", String.class);
+        try (Channel<String> channelDesc = context.createChannel(channelName + ".DESC", String.class)) {
             channelDesc.connectAsync().get(2, TimeUnit.SECONDS);
             desc = channelDesc.get();
         } catch (Exception ex) {
@@ -12,7 +12,9 @@ import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.EventObject;
-import java.util.concurrent.TimeUnit;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.swing.AbstractCellEditor;
 import javax.swing.JColorChooser;
 import javax.swing.JComponent;
@@ -20,6 +22,7 @@ import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JTable;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -28,9 +31,6 @@ import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
-import org.epics.ca.Channel;
-import org.epics.ca.Context;
-import org.epics.ca.data.Graphic;
 
 /**
  *
@@ -40,6 +40,7 @@ public class ConfigFrame extends javax.swing.JFrame {
     final DefaultTableModel modelSeries;
     Config config;
     File file;
+    FileWatcher watcher;
     volatile boolean updating;
 
     final int COLUMN_NAME = 0;
@@ -247,6 +248,10 @@ public class ConfigFrame extends javax.swing.JFrame {
     }
     
     void clear() {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
         config = App.defaultConfig == null ? new Config() : App.defaultConfig.clone();
         file = null;
         updateWindow();
@@ -268,6 +273,104 @@ public class ConfigFrame extends javax.swing.JFrame {
         this.setTitle(file.getName());
         updateWindow();
         showPlotFrame();
+        if (App.isWatch()) {
+            watcher = new FileWatcher(file, () -> {
+                reload();
+            });
+        }
+    }
+
+    /**
+     * Re-reads the opened file and applies the differences to the running
+     * plot: curves are matched by name, and only the changed settings are
+     * set, so that channels and history are kept.
+     */
+    void reload() {
+        if (file == null) {
+            return;
+        }
+        try {
+            Config next = App.defaultConfig == null ? new Config() : App.defaultConfig.clone();
+            next.open(file);
+            if (!App.plotFrame.isStarted()) {
+                config = next;
+                updateWindow();
+                showPlotFrame();
+                return;
+            }
+            Logger.getLogger(ConfigFrame.class.getName()).info("Reloading: " + file);
+            apply(next);
+        } catch (Exception ex) {
+            Logger.getLogger(ConfigFrame.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+
+    void apply(Config next) throws Exception {
+        //Curves: the ones not in the new file end up after the matched ones
+        int count = next.getNumberCurves();
+        for (int i = 0; i < count; i++) {
+            Curve c = next.curves[i];
+            int index = -1;
+            for (int j = i; j < modelSeries.getRowCount(); j++) {
+                if (String.valueOf(c.name).equals(config.curves[j].name)) {
+                    index = j;
+                    break;
+                }
+            }
+            if (index < 0) {
+                insertChannel(i, c);
+            } else if (index != i) {
+                moveChannel(index, i);
+            }
+        }
+        while (modelSeries.getRowCount() > count) {
+            removeChannel(modelSeries.getRowCount() - 1);
+        }
+        if (count == 0) {
+            return;
+        }
+        config.colors = next.colors.clone();
+        config.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            applyRow(i, next.curves[i]);
+        }
+
+        PlotFrame plot = App.plotFrame;
+        plot.setTimespan(next.timespan);
+        plot.setSampleInterval(next.sampleInterval);
+        plot.setRedrawInterval(next.refreshInterval);
+        plot.setNumSamples(next.numSamples);
+        if (config.graphLineWidth != next.graphLineWidth) {
+            plot.setLineWidth(next.graphLineWidth);
+        }
+        plot.setGridX(next.gridXon);
+        plot.setGridY(next.gridYon);
+        plot.setLabelColorAxisY(next.axisYcolorStat);
+        plot.setBackgroundColor(next.background.toColor());
+        plot.setGridColor(next.grid.toColor());
+        plot.setForegroundColor(next.foreground.toColor());
+        updateSettings();
+    }
+
+    /**
+     * Sets the cells of the row that differ from the curve: the table
+     * listener applies them to the plot.
+     */
+    void applyRow(int i, Curve c) {
+        setCell(i, COLUMN_ENABLED, (c.plotStatus == null) || (c.plotStatus));
+        setCell(i, COLUMN_LOG, c.scale == Scale.logarithmic);
+        setCell(i, COLUMN_PREC, c.precision);
+        setCell(i, COLUMN_MIN, c.min);
+        setCell(i, COLUMN_MAX, c.max);
+        setCell(i, COLUMN_UNITS, c.units == null ? "" : c.units);
+        setCell(i, COLUMN_DESC, c.comment == null ? "" : c.comment);
+        setCell(i, COLUMN_COLORS, Config.getStringFromColor(config.getColor(i).toColor()));
+    }
+
+    void setCell(int row, int column, Object value) {
+        if (!Objects.equals(modelSeries.getValueAt(row, column), value)) {
+            modelSeries.setValueAt(value, row, column);
+        }
     }
 
     void save(File file) throws IOException {
@@ -281,14 +384,45 @@ public class ConfigFrame extends javax.swing.JFrame {
     void load(String[] channels) throws Exception {
         clear();
         Config config = App.defaultConfig == null ? new Config() : App.defaultConfig.clone();
-        config.load(channels);
+        config.load(channels, App.plotFrame.getContext());
         this.file = null;
         this.config = config;
         this.setTitle("Channels");
         updateWindow();
         showPlotFrame();
+        for (int i = 0; i < config.getNumberCurves(); i++) {
+            updateMetadataAsync(config.curves[i]);
+        }
     }
-    
+
+    /**
+     * Applies to the curve, as if edited in the table, its metadata once read
+     * in the background. The curve is disabled if the channel did not
+     * connect. Cached metadata is applied right away, leaving the row
+     * unchanged.
+     */
+    void updateMetadataAsync(Curve c) {
+        App.getMetadataCache().getAsync(App.plotFrame.getContext(), c.name).thenAccept(m -> {
+            SwingUtilities.invokeLater(() -> {
+                //The curve may have been removed or the configuration replaced
+                for (int i = 0; i < config.getNumberCurves(); i++) {
+                    if ((config.curves[i] == c) && (i < modelSeries.getRowCount())) {
+                        if (m == null) {
+                            c.plotStatus = false;
+                        } else {
+                            c.precision = m.precision;
+                            c.min = m.min;
+                            c.max = m.max;
+                            c.units = m.units;
+                            c.comment = m.desc;
+                        }
+                        applyRow(i, c);
+                    }
+                }
+            });
+        });
+    }
+
     void showPlotFrame(){
         App.plotFrame.setVisible(true);
         App.plotFrame.setTitle(getTitle());
@@ -298,11 +432,22 @@ public class ConfigFrame extends javax.swing.JFrame {
 
     void updateColors() {
         for (int i = 0; i < modelSeries.getRowCount(); i++) {
-            modelSeries.setValueAt(Config.getStringFromColor(config.colors[i].toColor()), i, COLUMN_COLORS);
+            modelSeries.setValueAt(Config.getStringFromColor(config.getColor(i).toColor()), i, COLUMN_COLORS);
         }
     }
 
     void updateWindow() {
+        updateSettings();
+        if (modelSeries.getRowCount() != config.getNumberCurves()) {
+            modelSeries.setRowCount(config.getNumberCurves());
+        }
+        for (int i = 0; i < config.getNumberCurves(); i++) {
+            updateRow(i);
+        }
+        updateButtons();
+    }
+
+    void updateSettings() {
         panelColorForeground.setBackground(config.foreground.toColor());
         panelColorBackground.setBackground(config.background.toColor());
         panelColorGrid.setBackground(config.grid.toColor());
@@ -322,23 +467,19 @@ public class ConfigFrame extends javax.swing.JFrame {
         } finally{
             updating=false;
         }
+    }
 
-        if (modelSeries.getRowCount() != config.getNumberCurves()) {
-            modelSeries.setRowCount(config.getNumberCurves());
-        }
-        for (int i = 0; i < config.getNumberCurves(); i++) {
-            Curve c = config.curves[i];
-            modelSeries.setValueAt(c.name, i, COLUMN_NAME);
-            modelSeries.setValueAt((c.plotStatus == null) || (c.plotStatus), i, COLUMN_ENABLED);
-            modelSeries.setValueAt(c.scale == Scale.logarithmic, i, COLUMN_LOG);
-            modelSeries.setValueAt(c.precision, i, COLUMN_PREC);
-            modelSeries.setValueAt(c.min, i, COLUMN_MIN);
-            modelSeries.setValueAt(c.max, i, COLUMN_MAX);
-            modelSeries.setValueAt(c.units == null ? "" : c.units, i, COLUMN_UNITS);
-            modelSeries.setValueAt(c.comment == null ? "" : c.comment, i, COLUMN_DESC);
-            modelSeries.setValueAt(Config.getStringFromColor(config.colors[i].toColor()), i, COLUMN_COLORS);
-        }
-        updateButtons();
+    void updateRow(int i) {
+        Curve c = config.curves[i];
+        modelSeries.setValueAt(c.name, i, COLUMN_NAME);
+        modelSeries.setValueAt((c.plotStatus == null) || (c.plotStatus), i, COLUMN_ENABLED);
+        modelSeries.setValueAt(c.scale == Scale.logarithmic, i, COLUMN_LOG);
+        modelSeries.setValueAt(c.precision, i, COLUMN_PREC);
+        modelSeries.setValueAt(c.min, i, COLUMN_MIN);
+        modelSeries.setValueAt(c.max, i, COLUMN_MAX);
+        modelSeries.setValueAt(c.units == null ? "" : c.units, i, COLUMN_UNITS);
+        modelSeries.setValueAt(c.comment == null ? "" : c.comment, i, COLUMN_DESC);
+        modelSeries.setValueAt(Config.getStringFromColor(config.getColor(i).toColor()), i, COLUMN_COLORS);
     }
     
     
@@ -346,42 +487,60 @@ public class ConfigFrame extends javax.swing.JFrame {
         if (channelName.isBlank()){
             throw new Exception("Invalid channel name");
         }
-        try (Context context = new Context(App.getCaProperties())) {
-            Channel<Double> channel = context.createChannel(channelName, Double.class);
-            channel.connectAsync().get(2, TimeUnit.SECONDS);
-            Graphic g = channel.get(Graphic.class);
-            String units = g.getUnits() == null ? "" : g.getUnits();
-            Integer precision = ((Number) g.getPrecision()).intValue();
-            Double min = ((Number) g.getLowerDisplay()).doubleValue();
-            Double max = ((Number) g.getUpperDisplay()).doubleValue();
-            if (max <= min) {
-                max = min + 1;
-            }
-            //String desc = ""Config.getChannelDesc(context, channelName);
-            //Resolve description dinamically 
-            String desc = ""; 
-
-            Object[] data = new Object[]{channelName, Boolean.TRUE, Boolean.FALSE,
-                precision, min, max, units, desc,
-                Config.getStringFromColor(config.colors[modelSeries.getRowCount()].toColor())};
-            int index = modelSeries.getRowCount();
-            //if (tableSeries.getSelectedRow() >= 0) {
-            //    index = tableSeries.getSelectedRow() + 1;
-            //    modelSeries.insertRow(tableSeries.getSelectedRow() + 1, data);
-            //} else {
-            modelSeries.addRow(data);
-            //}
-            modelSeries.fireTableDataChanged();
-            updateButtons();
-            updateColors();
-            if (!App.plotFrame.isStarted()){
-                App.plotFrame.start();
-            }
+        ChannelMetadata m = App.getMetadataCache().fetch(App.plotFrame.getContext(), channelName);
+        if (m == null) {
+            m = ChannelMetadata.getDefault(channelName);
+        }
+        Object[] data = new Object[]{channelName, Boolean.TRUE, Boolean.FALSE,
+            m.precision, m.min, m.max, m.units, m.desc,
+            Config.getStringFromColor(config.getColor(modelSeries.getRowCount()).toColor())};
+        int index = modelSeries.getRowCount();
+        //if (tableSeries.getSelectedRow() >= 0) {
+        //    index = tableSeries.getSelectedRow() + 1;
+        //    modelSeries.insertRow(tableSeries.getSelectedRow() + 1, data);
+        //} else {
+        modelSeries.addRow(data);
+        //}
+        modelSeries.fireTableDataChanged();
+        updateButtons();
+        updateColors();
+        if (!App.plotFrame.isStarted()){
+            App.plotFrame.start();
+        }
 
-            App.plotFrame.addChannel(index, channelName, true, false, precision, min, max, units, desc);
+        App.plotFrame.addChannel(index, channelName, true, false, m.precision, m.min, m.max, m.units, m.desc);
+        if (index < config.getNumberCurves()) {
+            updateMetadataAsync(config.curves[index]);
         }
     }
     
+    void insertChannel(int index, Curve c) {
+        Object[] data = new Object[]{c.name, (c.plotStatus == null) || (c.plotStatus), c.scale == Scale.logarithmic,
+            c.precision, c.min, c.max, c.units == null ? "" : c.units, c.comment == null ? "" : c.comment,
+            Config.getStringFromColor(config.getColor(index).toColor())};
+        modelSeries.insertRow(index, data);
+        updateButtons();
+        if (!App.plotFrame.isStarted()) {
+            App.plotFrame.start();
+        }
+        App.plotFrame.addChannel(index, c.name, c.isEnabled(), c.scale == Scale.logarithmic,
+                c.precision, c.min, c.max, c.units, c.comment);
+    }
+
+    public void moveChannel(int from, int to) throws Exception{
+        if ((from < 0) || (from >= modelSeries.getRowCount()) || (to < 0) || (to >= modelSeries.getRowCount())){
+            throw new Exception("Invalid channel index");
+        }
+        if (App.plotFrame.isStarted()){
+            App.plotFrame.moveChannel(from, to);
+        } else {
+            config.moveCurve(from, to);
+        }
+        for (int i = Math.min(from, to); i <= Math.max(from, to); i++) {
+            updateRow(i);
+        }
+    }
+
     public void removeChannel(int index) throws Exception{
         if (index>=modelSeries.getRowCount()){
             throw new Exception("Invalid channel index");
@@ -1116,21 +1275,10 @@ public class ConfigFrame extends javax.swing.JFrame {
 
     private void buttonUpActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_buttonUpActionPerformed
         try {
-            int rows = modelSeries.getRowCount();
             int cur = tableSeries.getSelectedRow();
-            App.plotFrame.stop();
-            //modelSeries.moveRow(cur, cur, cur - 1);
-            Curve curve = config.curves[cur - 1];
-            config.curves[cur - 1] = config.curves[cur];
-            config.curves[cur] = curve;
-
+            moveChannel(cur, cur - 1);
             tableSeries.setRowSelectionInterval(cur - 1, cur - 1);
             updateButtons();
-            updateColors();
-
-            updateWindow();
-            App.plotFrame.start();
-
         } catch (Exception ex) {
             SwingUtils.showException(this, ex);
         }
@@ -1157,23 +1305,10 @@ public class ConfigFrame extends javax.swing.JFrame {
 
     private void buttonDownActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_buttonDownActionPerformed
         try {
-            int rows = modelSeries.getRowCount();
             int cur = tableSeries.getSelectedRow();
-
-            updateButtons();
-
-            App.plotFrame.stop();
-            //modelSeries.moveRow(cur, cur, cur + 1);
-            Curve curve = config.curves[cur + 1];
-            config.curves[cur + 1] = config.curves[cur];
-            config.curves[cur] = curve;
-
+            moveChannel(cur, cur + 1);
             tableSeries.setRowSelectionInterval(cur + 1, cur + 1);
             updateButtons();
-            updateColors();
-
-            updateWindow();
-            App.plotFrame.start();
         } catch (Exception ex) {
             SwingUtils.showException(this, ex);
         }
@@ -0,0 +1,397 @@
+package ch.psi.jstriptool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Writes the plot data as text or in the binary DataFile format. The data is
+ * copied from the series buffers when the exporter is created, in the event
+ * dispatch thread, so that the file can be written in a background thread
+ * while the plot goes on. Rows are streamed to the file through a fixed
+ * buffer: times and values are formatted directly into it, without creating
+ * strings per row.
+ */
+public class DataExporter {
+
+    static final String LINE_SEPARATOR = System.lineSeparator();
+    static final String FIELD_SEPARATOR = "\t";
+    static final int BUFFER_SIZE = 64 * 1024;
+    static final int MAX_FIELD_SIZE = 64;
+    static final double MAX_FAST_SCALED = 1e9; //Larger values are formatted by String.format
+    static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    //Date and time up to the minutes: formatted once per minute
+    static final DateTimeFormatter MINUTE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yy HH:mm:").withZone(ZoneId.systemDefault());
+
+    /**
+     * Receives the number of rows written, out of the total.
+     */
+    public interface Progress {
+
+        void update(long rows, long total);
+    }
+
+    final boolean sparse;
+    final PlotSeries[] series; //Copies, safe to read in the writer thread
+    final String[] names;
+    final String[] units;
+    final int[] precisions;
+    final long[][] times; //Per series, or a single shared column
+    final double[][] values;
+    final long total;
+    volatile boolean cancelled;
+
+    //Writer state
+    ByteBuffer buffer;
+    FileChannel channel;
+    long cachedMinute = Long.MIN_VALUE;
+    String minutePrefix;
+    final StringBuilder text = new StringBuilder();
+
+    DataExporter(boolean sparse, PlotSeries[] series, long[][] times, double[][] values) {
+        this.sparse = sparse;
+        this.series = series;
+        names = new String[series.length];
+        units = new String[series.length];
+        precisions = new int[series.length];
+        for (int i = 0; i < series.length; i++) {
+            names[i] = series[i].getName();
+            units[i] = series[i].getUnits();
+            precisions[i] = series[i].getPrecision();
+        }
+        this.times = times;
+        this.values = values;
+        long total = 0;
+        if (sparse || (times.length != 1)) {
+            for (long[] t : times) {
+                total += t.length;
+            }
+        } else {
+            total = times[0].length;
+        }
+        this.total = total;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Writes the file as text. If cancelled the partial file is deleted and a
+     * CancellationException is thrown.
+     */
+    public void write(Path path, Progress progress) throws IOException {
+        write(path, progress, false);
+    }
+
+    /**
+     * Writes the file in the binary format.
+     */
+    public void writeBinary(Path path, Progress progress) throws IOException {
+        write(path, progress, true);
+    }
+
+    void write(Path path, Progress progress, boolean binary) throws IOException {
+        boolean done = false;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (binary) {
+                writeBinary(new DataFile.Writer(channel), progress);
+            } else {
+                this.channel = channel;
+                buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                if (sparse) {
+                    writeSparse(progress);
+                } else if (times.length == 1) {
+                    writeShared(progress);
+                } else {
+                    writeAligned(progress);
+                }
+                flush();
+            }
+            done = true;
+        } finally {
+            channel = null;
+            buffer = null;
+            if (!done) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    void report(Progress progress, long rows) {
+        checkCancelled();
+        if (progress != null) {
+            progress.update(rows, total);
+        }
+    }
+
+    void writeSparse(Progress progress) throws IOException {
+        long rows = 0;
+        for (int i = 0; i < names.length; i++) {
+            write("#Series: ");
+            write(names[i]);
+            write(LINE_SEPARATOR);
+            long[] t = times[i];
+            double[] v = values[i];
+            for (int j = 0; j < t.length; j++) {
+                //Only the changes
+                if ((j == 0) || (Double.compare(v[j], v[j - 1]) != 0)) {
+                    writeTime(t[j]);
+                    write(' ');
+                    text.setLength(0);
+                    text.append(v[j]);
+                    write(text);
+                    write(LINE_SEPARATOR);
+                }
+                if ((++rows & 0xFFF) == 0) {
+                    report(progress, rows);
+                }
+            }
+            write(LINE_SEPARATOR);
+        }
+        report(progress, rows);
+    }
+
+    void writeHeader() throws IOException {
+        write("Time");
+        write(FIELD_SEPARATOR);
+        for (int i = 0; i < names.length; i++) {
+            write(names[i]);
+            write(" [");
+            write(String.valueOf(units[i]));
+            write("]");
+            write(FIELD_SEPARATOR);
+        }
+        write(LINE_SEPARATOR);
+    }
+
+    void writeShared(Progress progress) throws IOException {
+        writeHeader();
+        long[] t = times[0];
+        for (int i = 0; i < t.length; i++) {
+            //Rows repeating the previous values are skipped
+            boolean changed = (i == 0);
+            for (int j = 0; (j < values.length) && !changed; j++) {
+                changed = Double.compare(values[j][i], values[j][i - 1]) != 0;
+            }
+            if (changed) {
+                writeTime(t[i]);
+                write(FIELD_SEPARATOR);
+                for (int j = 0; j < values.length; j++) {
+                    writeFixed(values[j][i], precisions[j]);
+                    write(FIELD_SEPARATOR);
+                }
+                write(LINE_SEPARATOR);
+            }
+            if (((i + 1) & 0xFFF) == 0) {
+                report(progress, i + 1);
+            }
+        }
+        report(progress, t.length);
+    }
+
+    /**
+     * Series not sharing the time column: rows are aligned to the end, with
+     * the time of the first series.
+     */
+    void writeAligned(Progress progress) throws IOException {
+        writeHeader();
+        int count = (times.length > 0) ? times[0].length : 0;
+        double[] last = null;
+        double[] record = new double[values.length];
+        double[] previous = new double[values.length];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < values.length; j++) {
+                int index = i - Math.max(count - values[j].length, 0);
+                record[j] = (index >= 0) && (index < values[j].length) ? values[j][index] : Double.NaN;
+            }
+            if ((last == null) || !Arrays.equals(last, record)) {
+                System.arraycopy(record, 0, previous, 0, record.length);
+                last = previous;
+                writeTime(times[0][i]);
+                write(FIELD_SEPARATOR);
+                for (int j = 0; j < record.length; j++) {
+                    writeFixed(record[j], precisions[j]);
+                    write(FIELD_SEPARATOR);
+                }
+                write(LINE_SEPARATOR);
+            }
+            if (((i + 1) & 0xFFF) == 0) {
+                report(progress, (long) (i + 1) * values.length);
+            }
+        }
+        report(progress, total);
+    }
+
+    /**
+     * A single group if the time column is shared, otherwise one per series.
+     */
+    void writeBinary(DataFile.Writer writer, Progress progress) throws IOException {
+        int[][] groups = new int[times.length][];
+        double[][][] columns = new double[times.length][][];
+        for (int i = 0; i < groups.length; i++) {
+            if (times.length == 1) {
+                groups[i] = new int[values.length];
+                for (int j = 0; j < values.length; j++) {
+                    groups[i][j] = j;
+                }
+                columns[i] = values;
+            } else {
+                groups[i] = new int[]{i};
+                columns[i] = new double[][]{values[i]};
+            }
+        }
+        writer.writeHeader(series, groups);
+        long rows = 0;
+        for (int g = 0; g < groups.length; g++) {
+            for (int start = 0; start < times[g].length; start += DataFile.CHUNK_ROWS) {
+                int count = Math.min(DataFile.CHUNK_ROWS, times[g].length - start);
+                writer.write(g, times[g], columns[g], start, count);
+                rows += count;
+                report(progress, rows);
+            }
+        }
+        writer.flush();
+        report(progress, rows);
+    }
+
+    //Formatting into the buffer
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    void reserve(int size) throws IOException {
+        if (buffer.remaining() < size) {
+            flush();
+        }
+    }
+
+    void write(char c) throws IOException {
+        reserve(1);
+        buffer.put((byte) c);
+    }
+
+    void write(CharSequence str) throws IOException {
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                write(c);
+            } else {
+                //Non-ASCII names and units
+                String s = String.valueOf(c);
+                if (Character.isHighSurrogate(c) && (i + 1 < str.length())) {
+                    s = str.subSequence(i, i + 2).toString();
+                    i++;
+                }
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                reserve(bytes.length);
+                buffer.put(bytes);
+            }
+        }
+    }
+
+    void writeDigits(long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer.put((byte) ('0' + (value / POW10[i]) % 10));
+        }
+    }
+
+    void writeLong(long value) {
+        int digits = 1;
+        while ((digits < 19) && (value >= POW10[digits])) {
+            digits++;
+        }
+        writeDigits(value, digits);
+    }
+
+    /**
+     * Time as dd/MM/yy HH:mm:ss.SSS, followed by the sub-millisecond digits
+     * if present.
+     */
+    void writeTime(long nanos) throws IOException {
+        long millis = Math.floorDiv(nanos, 1000000L);
+        long offset = Math.floorMod(nanos, 1000000L);
+        long minute = Math.floorDiv(millis, 60000L);
+        if (minute != cachedMinute) {
+            cachedMinute = minute;
+            minutePrefix = MINUTE_FORMAT.format(Instant.ofEpochMilli(minute * 60000L));
+        }
+        write(minutePrefix);
+        reserve(MAX_FIELD_SIZE);
+        long ms = Math.floorMod(millis, 60000L);
+        writeDigits(ms / 1000, 2);
+        buffer.put((byte) '.');
+        writeDigits(ms % 1000, 3);
+        if (offset != 0) {
+            writeDigits(offset, 6);
+        }
+    }
+
+    /**
+     * Same output as String.format("%1.<precision>f"), with '.' as decimal
+     * separator. Values whose rounding cannot be decided exactly in double
+     * arithmetic go through String.format.
+     */
+    void writeFixed(double value, int precision) throws IOException {
+        precision = Math.max(precision, 0);
+        if (Double.isFinite(value) && (precision < POW10.length)) {
+            double scaled = Math.abs(value) * POW10[precision];
+            if (scaled < MAX_FAST_SCALED) {
+                long n = (long) scaled;
+                double fraction = scaled - n;
+                if (Math.abs(fraction - 0.5) > 1e-6) {
+                    if (fraction > 0.5) {
+                        n++;
+                    }
+                    reserve(MAX_FIELD_SIZE);
+                    if ((value < 0) || ((value == 0) && (1 / value < 0))) {
+                        buffer.put((byte) '-');
+                    }
+                    writeLong(n / POW10[precision]);
+                    if (precision > 0) {
+                        buffer.put((byte) '.');
+                        writeDigits(n % POW10[precision], precision);
+                    }
+                    return;
+                }
+            }
+        }
+        write(String.format(Locale.ROOT, "%1." + precision + "f", value));
+    }
+}
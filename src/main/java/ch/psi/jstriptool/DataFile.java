@@ -0,0 +1,422 @@
+package ch.psi.jstriptool;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary data file, read through a memory mapping. Layout (big-endian):
+ * <pre>
+ * header: magic, version, curve count, then per curve name, units,
+ *         description, precision, min, max, color, logarithmic;
+ *         group count, then per group the indexes of its curves.
+ * chunks: group, rows, first time, last time, size of the time deltas,
+ *         then the time deltas as zig-zag varints, and the values as
+ *         doubles, one column per curve of the group.
+ * </pre>
+ * Curves sampled together share a group and its time column; otherwise each
+ * curve is a group. Times are epoch ns.
+ */
+public class DataFile {
+
+    public static final int MAGIC = 0x4A535444; //"JSTD"
+    public static final short VERSION = 1;
+    public static final String EXTENSION = "jsd";
+    static final int CHUNK_ROWS = 4096;
+    static final int NO_COLOR = 0;
+    static final int CHUNK_HEADER_SIZE = 3 * Integer.BYTES + 2 * Long.BYTES;
+
+    /**
+     * Location of a chunk in the file.
+     */
+    public static class Chunk {
+
+        public final int group;
+        public final int rows;
+        public final long firstTime;
+        public final long lastTime;
+        final int position; //Offset of the time deltas
+        final int valuesPosition;
+
+        Chunk(int group, int rows, long firstTime, long lastTime, int position, int valuesPosition) {
+            this.group = group;
+            this.rows = rows;
+            this.firstTime = firstTime;
+            this.lastTime = lastTime;
+            this.position = position;
+            this.valuesPosition = valuesPosition;
+        }
+    }
+
+    final Path path;
+    final MappedByteBuffer buffer;
+    final PlotSeries[] series;
+    final int[][] groups;
+    final List<Chunk> chunks = new ArrayList<>();
+    final int[] rows; //Per group
+
+    DataFile(Path path) throws IOException {
+        this.path = path;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Invalid data file: " + path);
+            }
+            short version = buffer.getShort();
+            if (version > VERSION) {
+                throw new IOException("Unsupported data file version: " + version);
+            }
+            series = new PlotSeries[buffer.getInt()];
+            for (int i = 0; i < series.length; i++) {
+                String name = getString(buffer);
+                String units = getString(buffer);
+                String desc = getString(buffer);
+                int precision = buffer.getInt();
+                double min = buffer.getDouble();
+                double max = buffer.getDouble();
+                int color = buffer.getInt();
+                boolean logarithmic = buffer.get() != 0;
+                series[i] = new PlotSeries(name, (color == NO_COLOR) ? null : new Color(color, true),
+                        precision, min, max, units, desc, logarithmic, 1, 0);
+            }
+            groups = new int[buffer.getInt()][];
+            for (int i = 0; i < groups.length; i++) {
+                groups[i] = new int[buffer.getInt()];
+                for (int j = 0; j < groups[i].length; j++) {
+                    groups[i][j] = buffer.getInt();
+                }
+            }
+            rows = new int[groups.length];
+            //Only the chunk headers are read here. A chunk cut by the end of
+            //the file, left by an interrupted recording, is ignored.
+            while (buffer.remaining() >= CHUNK_HEADER_SIZE) {
+                int group = buffer.getInt();
+                int count = buffer.getInt();
+                long firstTime = buffer.getLong();
+                long lastTime = buffer.getLong();
+                int position = buffer.position() + Integer.BYTES;
+                int valuesPosition = position + buffer.getInt();
+                long end = valuesPosition + (long) groups[group].length * count * Double.BYTES;
+                if ((count <= 0) || (valuesPosition < position) || (end > buffer.limit())) {
+                    break;
+                }
+                chunks.add(new Chunk(group, count, firstTime, lastTime, position, valuesPosition));
+                rows[group] += count;
+                buffer.position((int) end);
+            }
+        } catch (RuntimeException ex) {
+            throw new IOException("Invalid data file: " + path, ex);
+        }
+    }
+
+    public static DataFile open(Path path) throws IOException {
+        return new DataFile(path);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Curves as stored in the file, with their display settings.
+     */
+    public PlotSeries[] getSeries() {
+        return series;
+    }
+
+    public int getGroupCount() {
+        return groups.length;
+    }
+
+    /**
+     * Indexes of the curves sharing the time column of the group.
+     */
+    public int[] getGroup(int group) {
+        return groups[group];
+    }
+
+    /**
+     * Group holding the curve.
+     */
+    public int getGroupOf(int index) {
+        for (int i = 0; i < groups.length; i++) {
+            for (int j : groups[i]) {
+                if (j == index) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public boolean isShared() {
+        return (groups.length == 1) && (groups[0].length == series.length);
+    }
+
+    public int getRows(int group) {
+        return rows[group];
+    }
+
+    public List<Chunk> getChunks() {
+        return chunks;
+    }
+
+    public Long getFirstTime() {
+        Long ret = null;
+        for (Chunk chunk : chunks) {
+            ret = (ret == null) ? chunk.firstTime : Math.min(ret, chunk.firstTime);
+        }
+        return ret;
+    }
+
+    public Long getLastTime() {
+        Long ret = null;
+        for (Chunk chunk : chunks) {
+            ret = (ret == null) ? chunk.lastTime : Math.max(ret, chunk.lastTime);
+        }
+        return ret;
+    }
+
+    /**
+     * Decodes the times of a chunk into the array, from the offset.
+     */
+    public void readTimes(Chunk chunk, long[] times, int offset) {
+        ByteBuffer b = buffer.duplicate();
+        b.position(chunk.position);
+        long time = chunk.firstTime;
+        times[offset] = time;
+        for (int i = 1; i < chunk.rows; i++) {
+            time += getVarLong(b);
+            times[offset + i] = time;
+        }
+    }
+
+    /**
+     * Decodes the values of a curve of the chunk group into the array, from
+     * the offset.
+     */
+    public void readValues(Chunk chunk, int column, double[] values, int offset) {
+        ByteBuffer b = buffer.duplicate();
+        b.position(chunk.valuesPosition + column * chunk.rows * Double.BYTES);
+        b.asDoubleBuffer().get(values, offset, chunk.rows);
+    }
+
+    /**
+     * Value of a curve of the chunk group at a row of the chunk.
+     */
+    public double readValue(Chunk chunk, int column, int row) {
+        return buffer.getDouble(chunk.valuesPosition + (column * chunk.rows + row) * Double.BYTES);
+    }
+
+    /**
+     * Time column of a group.
+     */
+    public long[] readTimes(int group) {
+        long[] ret = new long[rows[group]];
+        int offset = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.group == group) {
+                readTimes(chunk, ret, offset);
+                offset += chunk.rows;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Values of a curve, aligned with the time column of its group.
+     */
+    public double[] readValues(int index) {
+        int group = getGroupOf(index);
+        int column = indexOf(groups[group], index);
+        double[] ret = new double[rows[group]];
+        int offset = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.group == group) {
+                readValues(chunk, column, ret, offset);
+                offset += chunk.rows;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Writes a data file: the header, then the rows of each group in any
+     * order, split in chunks.
+     */
+    public static class Writer {
+
+        static final int BUFFER_SIZE = 64 * 1024;
+
+        final FileChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        final ByteBuffer deltas = ByteBuffer.allocate(CHUNK_ROWS * MAX_VAR_LONG_SIZE);
+        int[][] groups;
+        long size;
+
+        public Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Bytes written, including the buffered ones.
+         */
+        public long getSize() {
+            return size + buffer.position();
+        }
+
+        /**
+         * Series copies are expected: colors are read from the field so that
+         * the plot is not accessed.
+         */
+        public void writeHeader(PlotSeries[] series, int[][] groups) throws IOException {
+            this.groups = groups;
+            reserve(Integer.BYTES + Short.BYTES + Integer.BYTES);
+            buffer.putInt(MAGIC);
+            buffer.putShort(VERSION);
+            buffer.putInt(series.length);
+            for (PlotSeries s : series) {
+                writeString(s.getName());
+                writeString(s.getUnits());
+                writeString(s.getDesc());
+                reserve(2 * Integer.BYTES + 2 * Double.BYTES + 1);
+                buffer.putInt(s.getPrecision());
+                buffer.putDouble(s.getRangeMin());
+                buffer.putDouble(s.getRangeMax());
+                buffer.putInt((s.color == null) ? NO_COLOR : s.color.getRGB());
+                buffer.put((byte) (s.isLogaritimic() ? 1 : 0));
+            }
+            reserve(Integer.BYTES);
+            buffer.putInt(groups.length);
+            for (int[] group : groups) {
+                reserve(Integer.BYTES);
+                buffer.putInt(group.length);
+                for (int index : group) {
+                    reserve(Integer.BYTES);
+                    buffer.putInt(index);
+                }
+            }
+        }
+
+        /**
+         * Writes rows of a group, columns in the order of the group curves.
+         */
+        public void write(int group, long[] times, double[][] columns, int from, int count) throws IOException {
+            for (int start = from; start < from + count; start += CHUNK_ROWS) {
+                writeChunk(group, times, columns, start, Math.min(CHUNK_ROWS, from + count - start));
+            }
+        }
+
+        void writeChunk(int group, long[] times, double[][] columns, int start, int count) throws IOException {
+            deltas.clear();
+            for (int i = start + 1; i < start + count; i++) {
+                putVarLong(deltas, times[i] - times[i - 1]);
+            }
+            deltas.flip();
+            reserve(CHUNK_HEADER_SIZE);
+            buffer.putInt(group);
+            buffer.putInt(count);
+            buffer.putLong(times[start]);
+            buffer.putLong(times[start + count - 1]);
+            buffer.putInt(deltas.remaining());
+            reserve(deltas.remaining());
+            buffer.put(deltas);
+            for (double[] column : columns) {
+                for (int i = start; i < start + count; i++) {
+                    reserve(Double.BYTES);
+                    buffer.putDouble(column[i]);
+                }
+            }
+        }
+
+        void writeString(String str) throws IOException {
+            byte[] bytes = String.valueOf(str).getBytes(StandardCharsets.UTF_8);
+            reserve(Integer.BYTES);
+            buffer.putInt(bytes.length);
+            if (bytes.length > buffer.capacity()) {
+                flush();
+                write(ByteBuffer.wrap(bytes));
+            } else {
+                reserve(bytes.length);
+                buffer.put(bytes);
+            }
+        }
+
+        void reserve(int size) throws IOException {
+            if (buffer.remaining() < size) {
+                flush();
+            }
+        }
+
+        void write(ByteBuffer b) throws IOException {
+            while (b.hasRemaining()) {
+                size += channel.write(b);
+            }
+        }
+
+        public void flush() throws IOException {
+            buffer.flip();
+            write(buffer);
+            buffer.clear();
+        }
+
+        /**
+         * Flushes and forces the content to the storage device.
+         */
+        public void force() throws IOException {
+            flush();
+            channel.force(false);
+        }
+    }
+
+    static int indexOf(int[] array, int value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    //Encoding
+    static String getString(ByteBuffer b) {
+        byte[] bytes = new byte[b.getInt()];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long getVarLong(ByteBuffer b) {
+        long value = 0;
+        int shift = 0;
+        byte read;
+        do {
+            read = b.get();
+            value |= (long) (read & 0x7F) << shift;
+            shift += 7;
+        } while (read < 0);
+        return (value >>> 1) ^ -(value & 1); //Zig-zag
+    }
+
+    static void putVarLong(ByteBuffer b, long value) {
+        value = (value << 1) ^ (value >> 63); //Zig-zag
+        while ((value & ~0x7FL) != 0) {
+            b.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        b.put((byte) value);
+    }
+
+    static final int MAX_VAR_LONG_SIZE = 10;
+}
@@ -0,0 +1,309 @@
+package ch.psi.jstriptool;
+
+/**
+ * M4 decimation of a SampleBuffer column: for each time bucket only the first,
+ * last, minimum and maximum samples are kept. Buckets are anchored at epoch
+ * zero, so scrolling does not change them, and new samples are processed
+ * incrementally. NaN samples are kept and close the current bucket, so that
+ * gaps are preserved. With buckets not wider than a pixel, a line plot of the
+ * decimated points is identical to the plot of all samples.
+ * When the bucket width changes the points are rebuilt from the Pyramid
+ * aggregates, in time proportional to the number of buckets. An in-place
+ * update of the last row only reprocesses that row.
+ */
+public class Decimator {
+
+    final SampleBuffer buffer;
+    final SampleBuffer.Column column;
+    final Pyramid pyramid;
+    long width; //Bucket width in ns: 0 disables decimation
+
+    //Sequence numbers of the points of the closed buckets
+    long[] points = new long[256];
+    int start;
+    int end;
+
+    //Current bucket
+    boolean open;
+    long bucket;
+    long first;
+    long min;
+    long max;
+    long last;
+    final long[] tail = new long[4];
+    int tailCount;
+    final long[] bucketPoints = new long[4];
+
+    boolean valid;
+    long processed; //Sequence of the next row to be processed
+    long updates;
+    long front; //First sequence of the buffer in the last update
+
+    public Decimator(SampleBuffer buffer, SampleBuffer.Column column, Pyramid pyramid) {
+        this.buffer = buffer;
+        this.column = column;
+        this.pyramid = pyramid;
+    }
+
+    public long getWidth() {
+        return width;
+    }
+
+    /**
+     * Sets the bucket width in ns, rebuilding the points if changed.
+     */
+    public void setWidth(long width) {
+        width = Math.max(width, 0);
+        if (width != this.width) {
+            this.width = width;
+            valid = false;
+        }
+    }
+
+    public boolean isEnabled() {
+        return width > 0;
+    }
+
+    /**
+     * Processes the rows appended since the last call.
+     */
+    public void update() {
+        pyramid.update();
+        if (!valid) {
+            rebuild();
+            return;
+        }
+        long firstSequence = buffer.getFirstSequence();
+        long sequence = buffer.getSequence();
+        if (firstSequence != front) {
+            front = firstSequence;
+            trimFront(firstSequence);
+            if (open && (first < firstSequence)) {
+                trim(firstSequence);
+            }
+        }
+        if (buffer.getUpdates() != updates) {
+            //Last row modified in place
+            updates = buffer.getUpdates();
+            retract(processed - 1, firstSequence);
+        }
+        for (long seq = Math.max(processed, firstSequence); seq < sequence; seq++) {
+            process(seq, (int) (seq - firstSequence));
+        }
+        processed = sequence;
+        updateTail();
+    }
+
+    void rebuild() {
+        start = 0;
+        end = 0;
+        open = false;
+        long firstSequence = buffer.getFirstSequence();
+        int size = buffer.size();
+        int index = 0;
+        while (index < size) {
+            long seq = firstSequence + index;
+            if (Double.isNaN(buffer.getValue(column, index))) {
+                process(seq, index);
+                index++;
+                continue;
+            }
+            long b = Math.floorDiv(buffer.getTime(index), width);
+            int next = buffer.search(index, size, (b + 1) * width);
+            pyramid.query(seq, firstSequence + next);
+            if (pyramid.getNanCount() > 0) {
+                for (int i = index; i < next; i++) {
+                    process(firstSequence + i, i);
+                }
+            } else {
+                close();
+                open = true;
+                bucket = b;
+                first = seq;
+                last = firstSequence + next - 1;
+                min = pyramid.getMin();
+                max = pyramid.getMax();
+            }
+            index = next;
+        }
+        valid = true;
+        updates = buffer.getUpdates();
+        front = firstSequence;
+        processed = buffer.getSequence();
+        updateTail();
+    }
+
+    void process(long seq, int index) {
+        double value = buffer.getValue(column, index);
+        if (Double.isNaN(value)) {
+            close();
+            add(seq);
+            return;
+        }
+        long b = Math.floorDiv(buffer.getTime(index), width);
+        if (open && (b == bucket)) {
+            if (value < buffer.getValue(column, index(min))) {
+                min = seq;
+            }
+            if (value > buffer.getValue(column, index(max))) {
+                max = seq;
+            }
+            last = seq;
+        } else {
+            close();
+            open = true;
+            bucket = b;
+            first = min = max = last = seq;
+        }
+    }
+
+    /**
+     * Removes the points dropped by the buffer and rebuilds the oldest closed
+     * bucket, which may have lost some of its rows.
+     */
+    void trimFront(long firstSequence) {
+        while ((start < end) && (points[start] < firstSequence)) {
+            start++;
+        }
+        //Rows before the current bucket
+        int limit = index(open ? first : processed);
+        if ((start == end) || (limit <= 0) || Double.isNaN(buffer.getValue(column, 0))) {
+            return;
+        }
+        long b = Math.floorDiv(buffer.getTime(0), width);
+        int next = buffer.search(0, limit, (b + 1) * width);
+        pyramid.query(firstSequence, firstSequence + next);
+        if (pyramid.getNanCount() > 0) {
+            //Bucket split by a gap: ends before the first NaN
+            next = 1;
+            while (!Double.isNaN(buffer.getValue(column, next))) {
+                next++;
+            }
+            pyramid.query(firstSequence, firstSequence + next);
+        }
+        long f = firstSequence, mn = pyramid.getMin(), mx = pyramid.getMax(), l = firstSequence + next - 1;
+        while ((start < end) && (points[start] <= l)) {
+            start++;
+        }
+        int count = sort(f, mn, mx, l, bucketPoints);
+        if (start < count) {
+            int n = end - start;
+            long[] p = (n + count > points.length) ? new long[points.length * 2] : points;
+            System.arraycopy(points, start, p, count, n);
+            points = p;
+            start = count;
+            end = count + n;
+        }
+        start -= count;
+        System.arraycopy(bucketPoints, 0, points, start, count);
+    }
+
+    /**
+     * Removes the rows dropped by the buffer from the current bucket.
+     */
+    void trim(long firstSequence) {
+        if (last < firstSequence) {
+            open = false;
+            return;
+        }
+        pyramid.query(firstSequence, last + 1);
+        first = firstSequence;
+        min = pyramid.getMin();
+        max = pyramid.getMax();
+    }
+
+    /**
+     * Processes again the last processed row, removing it from its bucket.
+     */
+    void retract(long seq, long firstSequence) {
+        if (seq < firstSequence) {
+            return;
+        }
+        if (open && (last == seq)) {
+            if (first == seq) {
+                open = false;
+            } else {
+                //The other rows of the open bucket are not NaN
+                pyramid.query(first, seq);
+                min = pyramid.getMin();
+                max = pyramid.getMax();
+                last = seq - 1;
+            }
+        } else if (!open && (end > start) && (points[end - 1] == seq)) {
+            //NaN point
+            end--;
+        } else {
+            return;
+        }
+        process(seq, (int) (seq - firstSequence));
+    }
+
+    int index(long seq) {
+        return (int) (seq - buffer.getFirstSequence());
+    }
+
+    void close() {
+        if (open) {
+            open = false;
+            int count = sort(first, min, max, last, tail);
+            for (int i = 0; i < count; i++) {
+                add(tail[i]);
+            }
+            tailCount = 0;
+        }
+    }
+
+    /**
+     * Writes the distinct sequence numbers of a bucket in ascending order,
+     * returning their count.
+     */
+    static int sort(long first, long min, long max, long last, long[] ret) {
+        long a = Math.min(min, max);
+        long b = Math.max(min, max);
+        int count = 0;
+        ret[count++] = first;
+        if (a > first) {
+            ret[count++] = a;
+        }
+        if (b > a) {
+            ret[count++] = b;
+        }
+        if (last > b) {
+            ret[count++] = last;
+        }
+        return count;
+    }
+
+    void updateTail() {
+        tailCount = open ? sort(first, min, max, last, tail) : 0;
+    }
+
+    void add(long seq) {
+        if (end == points.length) {
+            int count = end - start;
+            if (start >= points.length / 2) {
+                System.arraycopy(points, start, points, 0, count);
+            } else {
+                long[] p = new long[points.length * 2];
+                System.arraycopy(points, start, p, 0, count);
+                points = p;
+            }
+            start = 0;
+            end = count;
+        }
+        points[end++] = seq;
+    }
+
+    public int getItemCount() {
+        return end - start + tailCount;
+    }
+
+    /**
+     * Buffer index of a decimated item.
+     */
+    public int getIndex(int item) {
+        int closed = end - start;
+        long seq = (item < closed) ? points[start + item] : tail[item - closed];
+        return index(seq);
+    }
+}
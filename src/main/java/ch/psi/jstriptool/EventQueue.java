@@ -0,0 +1,106 @@
+package ch.psi.jstriptool;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free bounded queue of the monitor events of a channel, in capture
+ * mode. Producers claim a position with a CAS and publish the slot through
+ * its sequence number; the single consumer drains without allocating. Events
+ * arriving when the queue is full are dropped and counted.
+ */
+public class EventQueue {
+
+    /**
+     * Receives the drained events: time in ms and the sub-millisecond part
+     * in ns.
+     */
+    public interface Consumer {
+
+        void accept(long time, long nanosOffset, double value);
+    }
+
+    final int mask;
+    final AtomicLongArray sequences;
+    final long[] times;
+    final long[] nanos;
+    final double[] values;
+    final AtomicLong tail = new AtomicLong();
+    final AtomicLong dropped = new AtomicLong();
+    volatile int series; //Position of the series, read by the producers when recording
+    long head; //Consumer only
+
+    public EventQueue(int capacity) {
+        int length = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mask = length - 1;
+        sequences = new AtomicLongArray(length);
+        times = new long[length];
+        nanos = new long[length];
+        values = new double[length];
+        for (int i = 0; i < length; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public boolean offer(long time, long nanosOffset, double value) {
+        long pos = tail.get();
+        int index;
+        while (true) {
+            index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+        times[index] = time;
+        nanos[index] = nanosOffset;
+        values[index] = value;
+        sequences.set(index, pos + 1);
+        return true;
+    }
+
+    /**
+     * Passes the queued events to the consumer. Must be called from a single
+     * thread. Returns the number of events drained.
+     */
+    public int drain(Consumer consumer) {
+        int ret = 0;
+        while (true) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                return ret;
+            }
+            long time = times[index];
+            long offset = nanos[index];
+            double value = values[index];
+            sequences.set(index, head + mask + 1);
+            head++;
+            ret++;
+            consumer.accept(time, offset, value);
+        }
+    }
+
+    public int getSeries() {
+        return series;
+    }
+
+    public void setSeries(int index) {
+        series = index;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+}
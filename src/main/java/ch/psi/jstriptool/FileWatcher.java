@@ -0,0 +1,103 @@
+package ch.psi.jstriptool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * Watches a file and calls the listener in the event dispatch thread when its
+ * content changes. Events are coalesced until the file is quiet for
+ * QUIET_TIME, so that a file being written, or replaced by a rename, is
+ * reported once.
+ */
+public class FileWatcher implements AutoCloseable {
+
+    static final Logger logger = Logger.getLogger(FileWatcher.class.getName());
+
+    static final long QUIET_TIME = 500; //ms
+
+    final Path path;
+    final Runnable listener;
+    final WatchService service;
+    final Thread thread;
+    byte[] content;
+
+    public FileWatcher(File file, Runnable listener) throws IOException {
+        path = file.getAbsoluteFile().toPath();
+        this.listener = listener;
+        content = read();
+        service = FileSystems.getDefault().newWatchService();
+        path.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(() -> {
+            run();
+        }, "File watcher: " + file.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public File getFile() {
+        return path.toFile();
+    }
+
+    byte[] read() {
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    boolean isEvent(WatchKey key) {
+        boolean ret = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (path.getFileName().equals(event.context())) {
+                ret = true;
+            }
+        }
+        key.reset();
+        return ret;
+    }
+
+    void run() {
+        try {
+            while (true) {
+                if (!isEvent(service.take())) {
+                    continue;
+                }
+                WatchKey key;
+                while ((key = service.poll(QUIET_TIME, TimeUnit.MILLISECONDS)) != null) {
+                    isEvent(key);
+                }
+                byte[] current = read();
+                if ((current != null) && !Arrays.equals(current, content)) {
+                    content = current;
+                    logger.fine("File changed: " + path);
+                    SwingUtilities.invokeLater(listener);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException ex) {
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, null, ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            service.close();
+        } catch (IOException ex) {
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ch.psi.jstriptool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Recording of the acquired samples kept per configuration file, to restore
+ * the plot history when the application is restarted. Segments are short so
+ * that the tail of the history is found reading only the last files, and
+ * only their chunks within the restored time range are decoded.
+ */
+public class Journal extends Recorder {
+
+    static final long SEGMENT_SIZE = 32 * 1024 * 1024L;
+    static final long SEGMENT_DURATION = 10 * 60 * 1000L; //ms
+    static final long MIN_RETENTION = 24 * 3600 * 1000L; //ms
+
+    public Journal(File folder, long retention) {
+        super(folder, SEGMENT_SIZE, SEGMENT_DURATION, Math.max(retention, MIN_RETENTION));
+    }
+
+    /**
+     * Journal folder of a configuration: keyed by the file path, or by the
+     * channel names if not opened from a file.
+     */
+    public static File getFolder(File file, Config config) {
+        String key;
+        if (file != null) {
+            String path = file.getAbsolutePath();
+            try {
+                path = file.getCanonicalPath();
+            } catch (IOException ex) {
+            }
+            key = file.getName().replaceAll("[^A-Za-z0-9._-]", "_") + "_" + Integer.toHexString(path.hashCode());
+        } else {
+            key = "channels_" + Integer.toHexString(String.join(" ", config.getCurvesNames()).hashCode());
+        }
+        return Paths.get(App.getHome(), ".jstriptool", "journal", key).toFile();
+    }
+
+    /**
+     * Fills the plot series, matched by name, with the journaled samples not
+     * older than from (epoch ns), after committing the pending rows. Returns
+     * the number of samples restored.
+     */
+    public int restore(PlotPanel plot, long from) {
+        flush();
+        File[] files = folder.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith("." + DataFile.EXTENSION));
+        if ((files == null) || (files.length == 0)) {
+            return 0;
+        }
+        Arrays.sort(files); //Names are UTC timestamps
+        //Newest first, up to the segment holding the start of the range
+        List<DataFile> segments = new ArrayList<>();
+        for (int i = files.length - 1; i >= 0; i--) {
+            try {
+                DataFile data = DataFile.open(files[i].toPath());
+                segments.add(0, data);
+                Long first = data.getFirstTime();
+                if ((first != null) && (first <= from)) {
+                    break;
+                }
+            } catch (IOException ex) {
+                logger.log(Level.FINE, "Cannot read journal segment: " + files[i], ex);
+            }
+        }
+
+        int numSeries = plot.getNumberOfSeries();
+        long[][] times = new long[numSeries][0];
+        double[][] values = new double[numSeries][0];
+        int[] sizes = new int[numSeries];
+        long[] chunkTimes = new long[DataFile.CHUNK_ROWS];
+        double[] chunkValues = new double[DataFile.CHUNK_ROWS];
+        int[] groups = new int[numSeries];
+        int[] columns = new int[numSeries];
+        for (DataFile data : segments) {
+            //Plot series matched to the segment columns
+            PlotSeries[] curves = data.getSeries();
+            boolean[] matched = new boolean[data.getGroupCount()];
+            for (int i = 0; i < numSeries; i++) {
+                String name = plot.getSeriesName(i);
+                groups[i] = -1;
+                for (int j = 0; (j < curves.length) && (groups[i] < 0); j++) {
+                    if (curves[j].getName().equals(name)) {
+                        groups[i] = data.getGroupOf(j);
+                        columns[i] = DataFile.indexOf(data.getGroup(groups[i]), j);
+                        matched[groups[i]] = true;
+                    }
+                }
+            }
+            for (DataFile.Chunk chunk : data.getChunks()) {
+                if (!matched[chunk.group] || (chunk.lastTime < from)) {
+                    continue;
+                }
+                //Times decoded once for all the series of a shared group
+                data.readTimes(chunk, chunkTimes, 0);
+                for (int i = 0; i < numSeries; i++) {
+                    if (groups[i] != chunk.group) {
+                        continue;
+                    }
+                    data.readValues(chunk, columns[i], chunkValues, 0);
+                    for (int k = 0; k < chunk.rows; k++) {
+                        long time = chunkTimes[k];
+                        //Times must be increasing: overlaps are skipped
+                        if ((time >= from) && ((sizes[i] == 0) || (time > times[i][sizes[i] - 1]))) {
+                            if (sizes[i] == times[i].length) {
+                                times[i] = Arrays.copyOf(times[i], Math.max(2 * sizes[i], 1024));
+                                values[i] = Arrays.copyOf(values[i], times[i].length);
+                            }
+                            times[i][sizes[i]] = time;
+                            values[i][sizes[i]] = chunkValues[k];
+                            sizes[i]++;
+                        }
+                    }
+                }
+            }
+        }
+        plot.restoreData(times, values, sizes);
+        int ret = 0;
+        for (int size : sizes) {
+            ret += size;
+        }
+        return ret;
+    }
+}
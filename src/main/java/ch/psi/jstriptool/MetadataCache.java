@@ -0,0 +1,221 @@
+package ch.psi.jstriptool;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.epics.ca.Context;
+
+/**
+ * Channel metadata persisted across sessions, keyed by PV name. Reads never
+ * block the caller: cached entries are returned immediately and re-read in
+ * the background when older than REFRESH_AGE, channels never seen before
+ * are read in the background and delivered through getAsync.
+ * The file holds one tab-separated line per channel: name, time, units,
+ * precision, min, max, description.
+ */
+public class MetadataCache {
+
+    static final Logger logger = Logger.getLogger(MetadataCache.class.getName());
+
+    static final long REFRESH_AGE = 60 * 1000L; //ms
+    static final long MAX_AGE = 30 * 24 * 3600 * 1000L; //Entries not read for longer are dropped on save
+
+    final File file;
+    final Map<String, ChannelMetadata> entries = new ConcurrentHashMap<>();
+    final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Metadata cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    final Map<String, CompletableFuture<ChannelMetadata>> pending = new ConcurrentHashMap<>();
+    final ExecutorService lookupExecutor = createLookupExecutor();
+
+    /**
+     * Lookups block on the channel connections: virtual threads on JDK 21,
+     * otherwise a pool of daemon threads.
+     */
+    static ExecutorService createLookupExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception ex) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "Metadata lookup");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public MetadataCache(File file) {
+        this.file = file;
+        if ((file != null) && file.isFile()) {
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] tokens = line.split("\t", -1);
+                    if (tokens.length >= 7) {
+                        try {
+                            ChannelMetadata m = new ChannelMetadata(tokens[0], tokens[2], Integer.valueOf(tokens[3]),
+                                    Double.valueOf(tokens[4]), Double.valueOf(tokens[5]), tokens[6], Long.valueOf(tokens[1]));
+                            entries.put(m.name, m);
+                        } catch (NumberFormatException ex) {
+                        }
+                    }
+                }
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Cannot read metadata cache: " + file, ex);
+            }
+        }
+    }
+
+    public ChannelMetadata get(String name) {
+        return (name == null) ? null : entries.get(name.trim());
+    }
+
+    /**
+     * Returns the channel description without blocking: from the cache if
+     * present, otherwise read in the background with the rest of the
+     * metadata, which is then cached.
+     */
+    public CompletableFuture<String> getDesc(Context context, String name) {
+        return getAsync(context, name).thenApply(m -> (m == null) ? "" : m.desc);
+    }
+
+    /**
+     * Returns the channel metadata without blocking: completed if cached,
+     * otherwise when the background read finishes (null if the channel did
+     * not connect in time).
+     */
+    public CompletableFuture<ChannelMetadata> getAsync(Context context, String name) {
+        ChannelMetadata m = get(name);
+        if ((m != null) || (name == null) || name.isBlank()) {
+            return CompletableFuture.completedFuture(m);
+        }
+        String key = name.trim();
+        CompletableFuture<ChannelMetadata> future = pending.get(key);
+        if (future == null) {
+            refresh(context, new String[]{key});
+            future = pending.get(key);
+        }
+        //The read may have completed in the meanwhile
+        return (future == null) ? CompletableFuture.completedFuture(get(key)) : future;
+    }
+
+    /**
+     * Returns the cached metadata of the channels, in the same order, never
+     * blocking: entries are null for channels not in the cache. These, and
+     * the stale ones, are read in the background: getAsync returns the
+     * pending reads.
+     */
+    public ChannelMetadata[] fetch(Context context, String[] names) {
+        ChannelMetadata[] ret = new ChannelMetadata[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ret[i] = get(names[i]);
+        }
+        refresh(context, names);
+        return ret;
+    }
+
+    public ChannelMetadata fetch(Context context, String name) {
+        return fetch(context, new String[]{name})[0];
+    }
+
+    /**
+     * Reads in one background batch the channels missing or stale in the
+     * cache, and saves it. Channels already being read are not requested
+     * again.
+     */
+    public void refresh(Context context, String[] names) {
+        List<String> list = new ArrayList<>();
+        List<CompletableFuture<ChannelMetadata>> futures = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String name : names) {
+            if ((name != null) && !name.isBlank()) {
+                String key = name.trim();
+                ChannelMetadata m = get(key);
+                if ((m == null) || (now - m.time > REFRESH_AGE)) {
+                    CompletableFuture<ChannelMetadata> future = new CompletableFuture<>();
+                    if (pending.putIfAbsent(key, future) == null) {
+                        list.add(key);
+                        futures.add(future);
+                    }
+                }
+            }
+        }
+        if (list.size() > 0) {
+            String[] channels = list.toArray(new String[0]);
+            lookupExecutor.execute(() -> {
+                ChannelMetadata[] read = new ChannelMetadata[channels.length];
+                try {
+                    read = ChannelMetadata.fetch(context, channels, true, ChannelMetadata.DEFAULT_TIMEOUT);
+                    for (ChannelMetadata m : read) {
+                        if (m != null) {
+                            entries.put(m.name, m);
+                        }
+                    }
+                } catch (Exception ex) {
+                    logger.log(Level.FINE, "Cannot read channel metadata", ex);
+                } finally {
+                    for (int i = 0; i < channels.length; i++) {
+                        pending.remove(channels[i], futures.get(i));
+                        //A failed refresh keeps the cached entry
+                        futures.get(i).complete((read[i] != null) ? read[i] : get(channels[i]));
+                    }
+                }
+                saveAsync();
+            });
+        }
+    }
+
+    void saveAsync() {
+        executor.submit(() -> {
+            save();
+        });
+    }
+
+    /**
+     * Writes to a temporary file, then replaces the cache file so that
+     * concurrent instances never read a partial file.
+     */
+    synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            File folder = file.getAbsoluteFile().getParentFile();
+            folder.mkdirs();
+            Path tmp = Files.createTempFile(folder.toPath(), file.getName(), ".tmp");
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))) {
+                for (ChannelMetadata m : entries.values()) {
+                    if (now - m.time <= MAX_AGE) {
+                        out.println(String.join("\t", m.name, String.valueOf(m.time), clean(m.units),
+                                String.valueOf(m.precision), String.valueOf(m.min), String.valueOf(m.max), clean(m.desc)));
+                    }
+                }
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, "Cannot write metadata cache: " + file, ex);
+        }
+    }
+
+    static String clean(String str) {
+        return str.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
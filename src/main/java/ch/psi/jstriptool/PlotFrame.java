@@ -7,18 +7,24 @@ import ch.psi.jstriptool.Config.LabelColorAxisY;
 import ch.psi.jstriptool.Config.Scale;
 import java.awt.Color;
 import java.awt.event.ActionEvent;
+import java.io.File;
+import java.nio.file.Paths;
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.swing.JFileChooser;
 import javax.swing.JMenuItem;
 import javax.swing.SwingUtilities;
 import javax.swing.Timer;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import org.epics.ca.Channel;
 import org.epics.ca.Context;
 import org.epics.ca.Monitor;
@@ -32,6 +38,7 @@ public class PlotFrame extends javax.swing.JFrame {
 
     static PlotFrame instance;
     final boolean blocking;
+    final boolean capture;
     final boolean hideInvalid;
 
     /**
@@ -48,9 +55,38 @@ public class PlotFrame extends javax.swing.JFrame {
             App.configFrame.setVisible(true);
         });
         plotPanel.addPopupMenuItem(menuShowConfig);
-        plotPanel.setSparse(false);//Values are appended together for all series
-
+        JMenuItem menuOpenData = new JMenuItem("Open Data...");
+        menuOpenData.addActionListener((ActionEvent e) -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setFileFilter(new FileNameExtensionFilter("Binary data files", DataFile.EXTENSION));
+            if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                try {
+                    openData(chooser.getSelectedFile().getPath());
+                } catch (Exception ex) {
+                    SwingUtils.showException(this, ex);
+                }
+            }
+        });
+        plotPanel.addPopupMenuItem(menuOpenData);
+        JMenuItem menuReplayData = new JMenuItem("Replay Data...");
+        menuReplayData.addActionListener((ActionEvent e) -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setFileFilter(new FileNameExtensionFilter("Binary data files", DataFile.EXTENSION));
+            if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+                try {
+                    startReplay(chooser.getSelectedFile().getPath(), 1.0);
+                } catch (Exception ex) {
+                    SwingUtils.showException(this, ex);
+                }
+            }
+        });
+        plotPanel.addPopupMenuItem(menuReplayData);
         blocking = App.isBlocking();
+        capture = App.isCapture() && !blocking && !App.isSimulated();
+        //Values are appended together for all series, unless captured per channel
+        plotPanel.setSparse(capture);
+        plotPanel.setBackgroundRendering(App.isBackgroundRendering());
+
         hideInvalid = App.getHideInvalid();
         
         //Not implemented
@@ -70,8 +106,14 @@ public class PlotFrame extends javax.swing.JFrame {
         panelSeriesSet.addSeries(series);
         repaint();
 
-        if (!App.isSimulated()) {
+        if (hasChannels()) {
             Channel<Double> channel = ((c.name!=null) && (!c.name.isEmpty())) ? context.createChannel(c.name, Double.class) : null;
+            int epoch = cache.getEpoch(); //Read first: if cleared meanwhile the writes are dropped
+            int slot = cache.add(toTimestamped(Double.NaN, null));
+            EventQueue events = capture ? new EventQueue(App.getQueueSize()) : null;
+            if (events != null) {
+                events.setSeries(numberOfSeries - 1);
+            }
             if (channel!=null){
                 //channel.connect();
                 channel.connectAsync().handle((ret, ex) -> {
@@ -79,14 +121,16 @@ public class PlotFrame extends javax.swing.JFrame {
                     series.setConnected();
                     if (!blocking) {
                         if (c.isEnabled()) {
-                            updateAsync(channel);
+                            updateAsync(channel, slot, epoch);
                         }
                         Monitor<Timestamped<Double>> monitor = channel.addMonitor(Timestamped.class, timestampedValue -> {
                             if (timestampedValue != null) {
                                 if (c.isEnabled()) {
-                                    cache.put(channel, timestampedValue);
-                                    if (config.sampleInterval <= 0) {
-                                        addValue();
+                                    cache.set(slot, epoch, timestampedValue);
+                                    if (events != null) {
+                                        capture(events, timestampedValue);
+                                    } else if (config.sampleInterval <= 0) {
+                                        addValue(currentTimeNanos(), true);
                                     }
                                 }
                             }
@@ -95,11 +139,128 @@ public class PlotFrame extends javax.swing.JFrame {
                     return ret;
                 });
             }
-            cache.put(channel, toTimestamped(Double.NaN, null));
             //channel.connect();
             
             synchronized (channels) {
                 channels.add(channel);
+                timeouts.add(new AtomicLong());
+                captureQueues.add(events);
+            }
+        }
+    }
+
+    /**
+     * Moves a series keeping its channel, monitor and data.
+     */
+    public void moveSeries(int from, int to) {
+        plotPanel.moveSeries(from, to);
+        panelSeriesSet.moveSeries(from, to);
+        if (hasChannels()) {
+            synchronized (channels) {
+                channels.add(to, channels.remove(from));
+                timeouts.add(to, timeouts.remove(from));
+                captureQueues.add(to, captureQueues.remove(from));
+                updateCaptureIndexes();
+            }
+            lastValues = new double[0];
+            cache.move(from, to);
+        }
+        repaint();
+    }
+
+    /**
+     * Sampled rows hold the values in the series order: the queue is
+     * drained before the series change and recreated with the new width.
+     */
+    void flushQueue() {
+        if (SwingUtilities.isEventDispatchThread()) {
+            plotValues();
+        }
+    }
+
+    /**
+     * Rows sampled while the series were changing have the former layout and
+     * are discarded with the former queue: they are replaced by a single row
+     * sampled from the cached values with the new layout, at the time of the
+     * last one.
+     */
+    void resetQueue() {
+        SampleQueue former = queue;
+        queue = new SampleQueue(App.getQueueSize(), numberOfSeries, App.getQueueOverflow());
+        if (former != null) {
+            former.close();
+            if ((former.getDiscarded() > 0) && !capture && !blocking && (replay == null) && getPlot().isStarted()) {
+                //Already recorded when sampled
+                try {
+                    queue.offer(former.getLastTime(), sample(numberOfSeries), numberOfSeries);
+                } catch (Exception ex) {
+                }
+            }
+        }
+        updateRecorder();
+    }
+
+    /**
+     * Recorded segments hold the series in the plot order: a new segment is
+     * started when they change.
+     */
+    void updateRecorder() {
+        Recorder recorder = App.getRecorder();
+        if (recorder != null) {
+            recorder.setSeries((isStarted() && (replay == null)) ? plotPanel.copySeries() : null, !capture);
+        }
+        Journal journal = this.journal;
+        if (journal != null) {
+            journal.setSeries((isStarted() && (replay == null)) ? plotPanel.copySeries() : null, !capture);
+        }
+    }
+
+    /**
+     * Opens the journal of the configuration, if enabled, and restores the
+     * samples within the timespan. Not used when replaying.
+     */
+    void startJournal() {
+        if (!App.isJournal() || (replay != null)) {
+            return;
+        }
+        File folder = Journal.getFolder(App.configFrame.file, config);
+        if ((journal != null) && !journal.getFolder().equals(folder)) {
+            journal.close();
+            journal = null;
+        }
+        if (journal == null) {
+            journal = new Journal(folder, 2 * config.timespan * 1000L);
+        }
+        long start = System.currentTimeMillis();
+        int restored = journal.restore(plotPanel, PlotPanel.toNanos(start - config.timespan * 1000L, 0));
+        if (restored > 0) {
+            Logger.getLogger(PlotFrame.class.getName()).fine("Restored " + restored + " samples from: " + folder
+                    + " in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    /**
+     * Curve colors are set by position: updates the series in the range.
+     */
+    void updateSeriesColors(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            PlotSeries series = plotPanel.getPlotSeries(i);
+            if ((series != null) && !plotPanel.isSeriesHidden(series)) {
+                series.setColor(config.getColor(i).toColor());
+                panelSeriesSet.updateSeries(i);
+            }
+        }
+        updateAxisColor();
+    }
+
+    /**
+     * The capture callbacks record to the position of their series, which
+     * they read without locking.
+     */
+    void updateCaptureIndexes() {
+        for (int i = 0; i < captureQueues.size(); i++) {
+            if (captureQueues.get(i) != null) {
+                captureQueues.get(i).setSeries(i);
             }
         }
     }
@@ -112,12 +273,17 @@ public class PlotFrame extends javax.swing.JFrame {
         plotPanel.removeSeries(index);
         panelSeriesSet.removeSeries(index);
         repaint();
-        if (!App.isSimulated()) {
+        if (hasChannels()) {
             Channel channel = null;
             synchronized (channels) {
                 channel = channels.get(index);
                 channels.remove(index);
+                timeouts.remove(index);
+                captureQueues.remove(index);
+                updateCaptureIndexes();
             }
+            lastValues = new double[0];
+            cache.remove(index);
             if (channel != null) {
                 Logger.getLogger(App.class.getName()).fine("Disconnected channel: " + channel.getName());
                 channel.close();
@@ -159,26 +325,69 @@ public class PlotFrame extends javax.swing.JFrame {
 
     Timer redrawTimer;
     //java.util.Timer sampleTimer;
-    ScheduledExecutorService sampleScheduler;
+    SampleScheduler sampleScheduler;
     Context context;
+    Context sharedContext;
     final List<Channel<Double>> channels = new ArrayList<>();
-    final Map<Channel<Double>, Timestamped<Double>> cache = new HashMap<>();
-    //final ArrayList<Timestamped<Timestamped<Double>[]>> valueList = new ArrayList<>(); //Retain IOC time
-    final ArrayList<Timestamped<double[]>> valueList = new ArrayList<>();
+    final ValueSlots<Timestamped<Double>> cache = new ValueSlots<>();
+    volatile SampleQueue queue;
+    final List<AtomicLong> timeouts = new ArrayList<>(); //Blocking get timeouts per channel
+    final List<EventQueue> captureQueues = new ArrayList<>();
+    final AtomicBoolean plotScheduled = new AtomicBoolean();
+    final long blockingTimeout = (long) (App.getBlockingTimeout() * 1e9);
+    final boolean blockingHold = App.isBlockingHold();
+    CompletableFuture<Double>[] pendingGets = new CompletableFuture[0];
+    double[] lastValues = new double[0];
+    final ThreadLocal<double[]> sampleValues = new ThreadLocal<>();
     volatile Config config;
+    volatile Replay replay;
+    volatile Journal journal;
     int numberOfSeries;
 
+    /**
+     * The EPICS context is created once and shared by the plot channels and
+     * the metadata reads: it is kept open when the plot is restarted, and
+     * closed on exit.
+     */
+    synchronized Context getContext() {
+        if (sharedContext == null) {
+            Logger.getLogger(App.class.getName()).fine("Creating EPICS context");
+            sharedContext = new Context(App.getCaProperties());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                closeContext();
+            }));
+        }
+        return sharedContext;
+    }
+
+    synchronized void closeContext() {
+        if (sharedContext != null) {
+            sharedContext.close();
+            sharedContext = null;
+        }
+    }
+
     void start() {
+        start(App.configFrame.config, null);
+    }
+
+    /**
+     * Starts the plot of the configuration, acquired from the channels or
+     * played back by the replay.
+     */
+    void start(Config config, Replay replay) {
         stop();
-        if (!App.isSimulated()) {
-            Logger.getLogger(App.class.getName()).fine("Creating EPICS context");
-            context = new Context(App.getCaProperties());
+        this.replay = replay;
+        if (hasChannels()) {
+            context = getContext();
         }
-        config = App.configFrame.config;
+        this.config = config;
         numberOfSeries = 0;
+        plotPanel.setSparse(isCapturing());
         //Anti-aliasing
         plotPanel.setAntiAlias(App.isAntiAliasing());
         int series = (config == null) ? 0 : config.getNumberCurves();
+        queue = new SampleQueue(App.getQueueSize(), series, App.getQueueOverflow());
         if (series > 0) {
             plotPanel.start();
             plotPanel.setPlotBackgroundColor(config.background.toColor());
@@ -190,7 +399,20 @@ public class PlotFrame extends javax.swing.JFrame {
             for (int i = 0; i < series; i++) {
                 addSeries(config.curves[i], config.colors[i].toColor(), i);
             }
-            startSampleTimer(true);
+            if (hasChannels()) {
+                String[] names = new String[series];
+                for (int i = 0; i < series; i++) {
+                    names[i] = config.curves[i].name;
+                }
+                App.getMetadataCache().refresh(context, names);
+            }
+            startJournal();
+            updateRecorder();
+            if (replay != null) {
+                replay.start();
+            } else if (!capture) {
+                startSampleTimer(true);
+            }
             startRedrawTimer(true);
             plotPanel.repaint();
              SwingUtilities.invokeLater(() -> {
@@ -241,63 +463,191 @@ public class PlotFrame extends javax.swing.JFrame {
          */
 
         if (sampleScheduler != null) {
-            sampleScheduler.shutdown();
+            sampleScheduler.close();
             sampleScheduler = null;
         }
         if (config.sampleInterval > 0) {
-            sampleScheduler = Executors.newSingleThreadScheduledExecutor();
-
-            sampleScheduler.scheduleAtFixedRate(new Runnable() {
-                @Override
-                public void run() {
-                    addValue();
-                }
-            }, triggerImmediately ? 0 : ((int) (config.sampleInterval * 1000)), ((int) (config.sampleInterval * 1000)), TimeUnit.MILLISECONDS);
+            sampleScheduler = new SampleScheduler(config.sampleInterval, App.getMissedTicks(), App.isTickTime(), (time) -> {
+                addValue(time);
+            });
+            sampleScheduler.setMaxFill(getMaxFillTicks());
+            sampleScheduler.start(triggerImmediately);
         }
 
     }
 
+    /**
+     * Missed ticks worth back-filling: those within the timespan and the
+     * buffer size, if limited.
+     */
+    long getMaxFillTicks() {
+        long ticks = (long) (config.timespan / config.sampleInterval);
+        return (config.numSamples > 0) ? Math.min(config.numSamples, ticks) : ticks;
+    }
+
     void addValue() {
+        addValue(currentTimeNanos());
+    }
+
+    void addValue(long nanos) {
+        addValue(nanos, false);
+    }
+
+    /**
+     * Samples all channels, nanos is the epoch time of the sample in ns.
+     * Channel access callbacks never wait for the queue, whatever the
+     * overflow policy, so that a stalled plot does not hold the monitors.
+     */
+    void addValue(long nanos, boolean callback) {
         try {
-            if (!getPlot().isStarted()) {
+            //Recorded even if the plot is paused
+            Recorder recorder = App.getRecorder();
+            Journal journal = this.journal;
+            boolean plotting = getPlot().isStarted();
+            if (!plotting && (recorder == null) && (journal == null)) {
                 return;
             }
-            long millis = System.currentTimeMillis();
             int series = getSeriesCount();
-            double[] values = new double[series];
-            if (App.isSimulated()) {
-                for (int i = 0; i < series; i++) {
-                    values[i] = Math.random() * (config.curves[i].max - config.curves[i].min) + config.curves[i].min;
-                }
+            double[] values = sample(series);
+            if (recorder != null) {
+                recorder.record(nanos, values, series);
+            }
+            if (journal != null) {
+                journal.record(nanos, values, series);
+            }
+            if (!plotting) {
+                return;
+            }
+            if (callback) {
+                queue.offerNow(nanos, values, series);
             } else {
-                //Timestamped<Double>[] values = new Timestamped[series]; //Retain IOC time
-                for (int i = 0; i < series; i++) {
-                    try {
-                        if (blocking) {
-                            if (config.curves[i].isEnabled()){
-                                values[i] = channels.get(i).getAsync().get(1, TimeUnit.SECONDS);
-                            } else {
-                                values[i] = Double.NaN;
-                            }
-                        } else {
-                            Timestamped<Double> t = cache.get(channels.get(i));
-                            values[i] = (hideInvalid && (t.getAlarmSeverity() == AlarmSeverity.INVALID_ALARM)) ? Double.NaN: t.getValue();
+                queue.offer(nanos, values, series);
+            }
+            if (config.refreshInterval <= 0) {
+                SwingUtilities.invokeLater(() -> plotValues());
+            }
+        } catch (Exception ex) {
+        }
+    }
+
+    /**
+     * Reads the current values of the first series channels into an array
+     * reused by the calling thread.
+     */
+    double[] sample(int series) {
+        double[] values = sampleValues.get();
+        if ((values == null) || (values.length < series)) {
+            values = new double[series];
+            sampleValues.set(values);
+        }
+        if (App.isSimulated()) {
+            for (int i = 0; i < series; i++) {
+                values[i] = Math.random() * (config.curves[i].max - config.curves[i].min) + config.curves[i].min;
+            }
+        } else if (blocking) {
+            readBlocking(values, series);
+        } else {
+            //Timestamped<Double>[] values = new Timestamped[series]; //Retain IOC time
+            for (int i = 0; i < series; i++) {
+                try {
+                    Timestamped<Double> t = cache.get(i);
+                    values[i] = (hideInvalid && (t.getAlarmSeverity() == AlarmSeverity.INVALID_ALARM)) ? Double.NaN: t.getValue();
+                } catch (Exception ex) {
+                    values[i] = Double.NaN;
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Issues the gets of all channels together and waits for them up to a
+     * single deadline, so that channels not responding delay the sample by
+     * the timeout only once. Late channels are NaN, or hold the last value
+     * if configured.
+     */
+    void readBlocking(double[] values, int series) {
+        if (pendingGets.length < series) {
+            pendingGets = new CompletableFuture[series];
+        }
+        double[] last = lastValues;
+        if (last.length < series) {
+            last = Arrays.copyOf(last, series);
+            Arrays.fill(last, lastValues.length, series, Double.NaN);
+            lastValues = last;
+        }
+        for (int i = 0; i < series; i++) {
+            try {
+                pendingGets[i] = config.curves[i].isEnabled() ? channels.get(i).getAsync() : null;
+            } catch (Exception ex) {
+                pendingGets[i] = null;
+            }
+        }
+        long deadline = System.nanoTime() + blockingTimeout;
+        for (int i = 0; i < series; i++) {
+            CompletableFuture<Double> get = pendingGets[i];
+            pendingGets[i] = null;
+            values[i] = Double.NaN;
+            if (get != null) {
+                try {
+                    values[i] = get.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                    last[i] = values[i];
+                } catch (TimeoutException ex) {
+                    get.cancel(true);
+                    synchronized (channels) {
+                        if (i < timeouts.size()) {
+                            timeouts.get(i).incrementAndGet();
                         }
-                    } catch (Exception ex) {
-                        values[i] = Double.NaN;
                     }
+                    if (blockingHold) {
+                        values[i] = last[i];
+                    }
+                } catch (Exception ex) {
                 }
             }
+        }
+    }
 
-            Timestamped<double[]> tv = toTimestamped(values, millis);
+    /**
+     * Epoch time in ns, with the resolution of the system clock.
+     */
+    static long currentTimeNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1000000000L + now.getNano();
+    }
 
-            synchronized (valueList) {
-                valueList.add(tv);
+    /**
+     * Queues a monitor event with the IOC timestamp, in capture mode.
+     */
+    void capture(EventQueue events, Timestamped<Double> value) {
+        long millis = value.getMillis();
+        long nanosOffset = value.getNanos() % 1000000;
+        if (value.getSeconds() <= 0) {
+            //Record never processed
+            millis = System.currentTimeMillis();
+            nanosOffset = 0;
+        }
+        Double v = value.getValue();
+        double d = ((v == null) || (hideInvalid && (value.getAlarmSeverity() == AlarmSeverity.INVALID_ALARM))) ? Double.NaN : v;
+        events.offer(millis, nanosOffset, d);
+        //Recorded even if the plot is paused
+        Recorder recorder = App.getRecorder();
+        Journal journal = this.journal;
+        if ((recorder != null) || (journal != null)) {
+            int index = events.getSeries();
+            if (recorder != null) {
+                recorder.record(index, PlotPanel.toNanos(millis, nanosOffset), d);
             }
-            if (config.refreshInterval <= 0) {
-                SwingUtilities.invokeLater(() -> plotValues());
+            if (journal != null) {
+                journal.record(index, PlotPanel.toNanos(millis, nanosOffset), d);
             }
-        } catch (Exception ex) {
+        }
+        Config config = this.config;
+        if ((config != null) && (config.refreshInterval <= 0) && plotScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                plotScheduled.set(false);
+                plotValues();
+            });
         }
     }
 
@@ -318,29 +668,28 @@ public class PlotFrame extends javax.swing.JFrame {
 
     void plotValues() {
         try {
-            List<Timestamped<double[]>> values;
-            //List<Timestamped<Timestamped<Double>[]>> values; //Retain IOC time
-            synchronized (valueList) {
-                values = (List<Timestamped<double[]>>) valueList.clone();
-                //values = (List<Timestamped<Timestamped<Double>[]>>) valueList.clone(); //Retain IOC time
-                valueList.clear();
-            }
-            if (getPlot().isStarted() & values.size() > 0) {
-                for (Timestamped<double[]> value : values) {
-                    getPlot().add(value.getMillis(), value.getValue());
-                }
-                //Retain IOC time
-                /*
-                for (Timestamped<Timestamped<Double>[]> value : values) {
-                    if (value!=null){
-                        for (int i=0; i< value.getValue().length; i++){
-                            Timestamped<Double> td = value.getValue()[i];
-                            getPlot().add(i, value.getMillis(), value.getValue());
+            SampleQueue queue = this.queue;
+            if ((queue != null) && getPlot().isStarted()) {
+                int count = 0;
+                if (isCapturing()) {
+                    synchronized (channels) {
+                        for (int i = 0; i < captureQueues.size(); i++) {
+                            PlotSeries series = getPlot().getPlotSeries(i);
+                            if (series != null) {
+                                count += captureQueues.get(i).drain((time, nanosOffset, value) -> {
+                                    series.appendData(time, nanosOffset, value);
+                                });
+                            }
                         }
                     }
+                } else {
+                    count = queue.drain((time, values) -> {
+                        getPlot().add(Math.floorDiv(time, 1000000L), Math.floorMod(time, 1000000L), values);
+                    });
+                }
+                if (count > 0) {
+                    getPlot().notifyUpdate();
                 }
-                 */
-                getPlot().notifyUpdate();
             }
         } catch (Exception ex) {
 
@@ -353,11 +702,15 @@ public class PlotFrame extends javax.swing.JFrame {
     }
 
     void stop() {
+        if (replay != null) {
+            replay.close();
+            replay = null;
+        }
         if (plotPanel != null) {
             plotPanel.stop();
         }
         if (sampleScheduler != null) {
-            sampleScheduler.shutdown();
+            sampleScheduler.close();
             sampleScheduler = null;
         }
         /*
@@ -370,19 +723,160 @@ public class PlotFrame extends javax.swing.JFrame {
             redrawTimer.stop();
             redrawTimer = null;
         }
-        if (context != null) {
-            context.close();
-            Logger.getLogger(App.class.getName()).fine("Closed EPICS context");
+        if (queue != null) {
+            queue.close();
         }
         synchronized (channels) {
+            for (Channel channel : channels) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
             channels.clear();
+            timeouts.clear();
+            captureQueues.clear();
         }
+        lastValues = new double[0];
         numberOfSeries = 0;
         cache.clear();
         config = null;
+        updateRecorder();
         clear();
     }
 
+    /**
+     * Saves the plot data: in the binary format if the file has its
+     * extension, otherwise as text. Can be called from any thread.
+     */
+    void saveData(String filename) throws Exception {
+        boolean binary = filename.toLowerCase().endsWith("." + DataFile.EXTENSION);
+        DataExporter[] exporter = new DataExporter[1];
+        Runnable snapshot = () -> {
+            exporter[0] = plotPanel.createExporter(binary ? false : plotPanel.isSparse());
+        };
+        if (SwingUtilities.isEventDispatchThread()) {
+            snapshot.run();
+        } else {
+            SwingUtilities.invokeAndWait(snapshot);
+        }
+        if (binary) {
+            exporter[0].writeBinary(Paths.get(filename), null);
+        } else {
+            exporter[0].write(Paths.get(filename), null);
+        }
+    }
+
+    /**
+     * Stops the acquisition and displays the content of a binary data file.
+     */
+    void openData(String filename) throws Exception {
+        DataFile data = DataFile.open(Paths.get(filename));
+        Runnable load = () -> {
+            stop();
+            plotPanel.loadData(data);
+            for (int i = 0; i < plotPanel.getNumberOfSeries(); i++) {
+                panelSeriesSet.addSeries(plotPanel.getPlotSeries(i));
+            }
+            Long first = data.getFirstTime();
+            Long last = data.getLastTime();
+            if (first != null) {
+                plotPanel.setDurationMillis((int) Math.min(Math.max((last - first) / 1000000L, 1000), Integer.MAX_VALUE));
+            }
+            updateAxisColor();
+            repaint();
+        };
+        if (SwingUtilities.isEventDispatchThread()) {
+            load.run();
+        } else {
+            SwingUtilities.invokeAndWait(load);
+        }
+    }
+
+    /**
+     * Plays back a data file through the sample queue, as if acquired. The
+     * curves and colors are taken from the file, the other settings from
+     * the current configuration. Speed is a factor of the recorded rate, 0
+     * for the maximum.
+     */
+    void startReplay(String filename, double speed) throws Exception {
+        DataFile data = DataFile.open(Paths.get(filename));
+        Config replayConfig = (App.configFrame.config == null) ? new Config() : App.configFrame.config.clone();
+        PlotSeries[] curves = data.getSeries();
+        replayConfig.curves = new Curve[Math.max(curves.length, 1)];
+        replayConfig.ensureCapacity(curves.length);
+        for (int i = 0; i < curves.length; i++) {
+            Curve c = new Curve();
+            c.name = curves[i].getName();
+            c.units = curves[i].getUnits();
+            c.comment = curves[i].getDesc();
+            c.precision = curves[i].getPrecision();
+            c.min = curves[i].getRangeMin();
+            c.max = curves[i].getRangeMax();
+            c.scale = curves[i].isLogaritimic() ? Scale.logarithmic : Scale.linear;
+            replayConfig.curves[i] = c;
+            if (curves[i].color != null) {
+                replayConfig.colors[i] = new DeepColor(curves[i].color);
+            }
+        }
+        Replay replay = new Replay(data, speed, (time, values) -> {
+            SampleQueue queue = this.queue;
+            //Waits for the plot whatever the overflow policy: rows are not dropped
+            if ((queue == null) || !queue.offer(time, values, values.length, SampleQueue.Overflow.block)) {
+                return false;
+            }
+            Config config = this.config;
+            if ((config != null) && (config.refreshInterval <= 0) && plotScheduled.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(() -> {
+                    plotScheduled.set(false);
+                    plotValues();
+                });
+            }
+            return true;
+        }, () -> {
+            //Rows older than the plotted ones are rejected by the buffers
+            try {
+                SwingUtilities.invokeAndWait(() -> {
+                    resetQueue();
+                    plotPanel.clear();
+                });
+            } catch (Exception ex) {
+            }
+        });
+        Runnable start = () -> {
+            start(replayConfig, replay);
+        };
+        if (SwingUtilities.isEventDispatchThread()) {
+            start.run();
+        } else {
+            SwingUtilities.invokeAndWait(start);
+        }
+    }
+
+    Replay getReplay() throws Exception {
+        Replay replay = this.replay;
+        if (replay == null) {
+            throw new Exception("No replay in progress");
+        }
+        return replay;
+    }
+
+    /**
+     * Ends the replay, if any, restarting the acquisition of the configuration.
+     */
+    void endReplay() {
+        if (replay != null) {
+            start();
+        }
+    }
+
+    boolean hasChannels() {
+        return !App.isSimulated() && (replay == null);
+    }
+
+    boolean isCapturing() {
+        return capture && (replay == null);
+    }
+
     int getSeriesCount() {
         return numberOfSeries;
         //synchronized (channels) {
@@ -390,14 +884,39 @@ public class PlotFrame extends javax.swing.JFrame {
         //}
     }
 
+    String getStats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(queue);
+        if (replay != null) {
+            sb.append("\n").append(replay);
+        }
+        if (App.getRecorder() != null) {
+            sb.append("\n").append(App.getRecorder());
+        }
+        if (sampleScheduler != null) {
+            sb.append("\n").append(sampleScheduler);
+        }
+        synchronized (channels) {
+            for (int i = 0; i < channels.size(); i++) {
+                if ((channels.get(i) != null) && (timeouts.get(i).get() > 0)) {
+                    sb.append("\n").append(channels.get(i).getName()).append(" timeouts: ").append(timeouts.get(i).get());
+                }
+                if ((channels.get(i) != null) && (captureQueues.get(i) != null) && (captureQueues.get(i).getDropped() > 0)) {
+                    sb.append("\n").append(channels.get(i).getName()).append(" dropped events: ").append(captureQueues.get(i).getDropped());
+                }
+            }
+        }
+        return sb.toString();
+    }
+
     boolean isStarted() {
         return (config != null) && (getSeriesCount() > 0);
     }
     
-    void updateAsync(Channel channel){
+    void updateAsync(Channel channel, int slot, int epoch){
         channel.getAsync(Timestamped.class).handle((value, ex) -> {
             if (ex == null) {
-                    cache.put(channel, (Timestamped)value);
+                    cache.set(slot, epoch, (Timestamped)value);
                 }
             return value;
         });    
@@ -408,11 +927,9 @@ public class PlotFrame extends javax.swing.JFrame {
             config.curves[index].plotStatus = value;
             synchronized (channels) {
                 if (value) {
-                    updateAsync(channels.get(index));
+                    updateAsync(channels.get(index), cache.getSlot(index), cache.getEpoch());
                 } else {
-                    Timestamped<Double> tv = new Timestamped<>();
-                    tv.setValue(Double.NaN);
-                    cache.put(channels.get(index), toTimestamped(Double.NaN, null));
+                    cache.set(cache.getSlot(index), cache.getEpoch(), toTimestamped(Double.NaN, null));
                 }
             }
         }
@@ -539,7 +1056,9 @@ public class PlotFrame extends javax.swing.JFrame {
         if (config != null) {
             if (config.sampleInterval != value) {
                 config.sampleInterval = value;
-                startSampleTimer(false);
+                if (!capture && (replay == null)) {
+                    startSampleTimer(false);
+                }
             }
         }
     }
@@ -549,6 +1068,9 @@ public class PlotFrame extends javax.swing.JFrame {
             if (config.timespan != value) {
                 config.timespan = value;
                 plotPanel.setDurationMillis(value * 1000);
+                if (sampleScheduler != null) {
+                    sampleScheduler.setMaxFill(getMaxFillTicks());
+                }
             }
         }
     }
@@ -560,17 +1082,22 @@ public class PlotFrame extends javax.swing.JFrame {
                 for (int i = 0; i < plotPanel.getNumberOfSeries(); i++) {
                     plotPanel.setMaximumItemCount(i, value);
                 }
+                if (sampleScheduler != null) {
+                    sampleScheduler.setMaxFill(getMaxFillTicks());
+                }
             }
         }
     }
 
+    /**
+     * Inserts a curve. The other channels, monitors and plot data are kept:
+     * the series is appended and moved to its index.
+     */
     public void addChannel(int index, String channelName, boolean enabled, boolean log,
             int precision, double min, double max, String units, String desc) {
+        endReplay();
         if (config != null) {
             if ((index >= 0) && (index <= config.getNumberCurves())) {
-                if (isStarted() && (index < config.getNumberCurves())) {
-                    stop();
-                }
                 Curve c = App.configFrame.config.insertCurve(index);
                 c.name = channelName;
                 c.plotStatus = enabled;
@@ -583,7 +1110,14 @@ public class PlotFrame extends javax.swing.JFrame {
                 if (!isStarted()) {
                     start();
                 } else {
-                    addSeries(c, config.colors[index].toColor(), index);
+                    flushQueue();
+                    int last = numberOfSeries;
+                    addSeries(c, config.getColor(last).toColor(), last);
+                    if (index < last) {
+                        moveSeries(last, index);
+                        updateSeriesColors(index, last);
+                    }
+                    resetQueue();
                     setActive(plotPanel.getPlotSeries(index));
                 }
             }
@@ -591,22 +1125,45 @@ public class PlotFrame extends javax.swing.JFrame {
     }
 
     public void removeChannel(int index) {
+        endReplay();
         if (config != null) {
             if ((index >= 0) && (index < config.getNumberCurves())) {
-                if (((index < config.getNumberCurves() - 1)) || (config.getNumberCurves() == 1)) {
+                if (config.getNumberCurves() == 1) {
                     stop();
-                } else {
+                } else if (isStarted()) {
+                    flushQueue();
                     removeSeries(index);
+                    resetQueue();
                 }
                 App.configFrame.config.removeCurve(index);
-
-                if (!isStarted() && (App.configFrame.config.getNumberCurves() > 0)) {
+                if (isStarted()) {
+                    updateSeriesColors(index, numberOfSeries - 1);
+                } else if (App.configFrame.config.getNumberCurves() > 0) {
                     start();
                 }
             }
         }
     }
-      
+
+    /**
+     * Moves a curve to another index, as a single series operation.
+     */
+    public void moveChannel(int from, int to) {
+        endReplay();
+        if (config != null) {
+            int count = config.getNumberCurves();
+            if ((from != to) && (from >= 0) && (from < count) && (to >= 0) && (to < count)) {
+                App.configFrame.config.moveCurve(from, to);
+                if (isStarted()) {
+                    flushQueue();
+                    moveSeries(from, to);
+                    resetQueue();
+                    updateSeriesColors(Math.min(from, to), Math.max(from, to));
+                }
+            }
+        }
+    }
+
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -4,22 +4,30 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Rectangle;
 import java.awt.Paint;
 import java.awt.Shape;
 import java.awt.event.ActionEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JCheckBoxMenuItem;
@@ -27,11 +35,14 @@ import javax.swing.JFileChooser;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
 import javax.swing.JPopupMenu;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
 import javax.swing.event.PopupMenuEvent;
 import javax.swing.event.PopupMenuListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
+import org.jfree.chart.ChartRenderingInfo;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.AxisLocation;
 import org.jfree.chart.axis.DateAxis;
@@ -39,17 +50,17 @@ import org.jfree.chart.axis.LogarithmicAxis;
 import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.axis.ValueAxis;
 import org.jfree.chart.entity.StandardEntityCollection;
+import org.jfree.chart.event.ChartChangeEvent;
 import org.jfree.chart.labels.StandardXYToolTipGenerator;
 import org.jfree.chart.plot.DatasetRenderingOrder;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYItemRenderer;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.Range;
-import org.jfree.data.time.FixedMillisecond;
-import org.jfree.data.time.TimeSeries;
+import org.jfree.data.time.DateRange;
 import org.jfree.data.time.TimeSeriesCollection;
-import org.jfree.data.time.TimeSeriesDataItem;
 import org.jfree.data.xy.XYDataItem;
+import org.jfree.data.xy.XYDataset;
 import org.jfree.ui.RectangleInsets;
 
 public class PlotPanel extends javax.swing.JPanel {
@@ -59,27 +70,34 @@ public class PlotPanel extends javax.swing.JPanel {
     static final double AUTO_RANGE_LOG_MINIMUM_SIZE = 1e-32;
     static final int PREFERRED_WIDTH = 600;
     static final int PREFERRED_HEIGHT = 400;
-    protected static final String LINE_SEPARATOR = System.lineSeparator();
-    protected static final String FIELD_SEPARATOR = "\t";
     static final double AXIS_MARGIN = 0.005;
 
     final JFreeChart chart;
     final ChartPanel chartPanel;
+    final Object renderLock = new Object(); //Held when drawing or changing the plot structure
+    BackgroundRenderer backgroundRenderer;
+    BackgroundRenderer.Frame renderedFrame;
+    VolatileImage mirror; //Copy of the rendered frame in video memory, updated by scrolling
+    long mirrorFrame = -1;
+    boolean interacting;
+    boolean renderScheduled;
+    boolean fullRender = true;
+    boolean updating;
     boolean autoScale = false;
     boolean scrollMode = true;
 
     class SeriesInfo {
 
-        SeriesInfo(int index, PlotSeries plotSeries, TimeSeries timeSeries, TimeSeriesCollection data) {
+        SeriesInfo(int index, PlotSeries plotSeries, SampleBuffer buffer, SeriesDataset data) {
             this.index = index;
             this.plotSeries = plotSeries;
-            this.timeSeries = timeSeries;
+            this.buffer = buffer;
             this.data = data;
         }
-        final int index;
+        int index; //Dataset index, equal to the position in the series list
         final PlotSeries plotSeries;
-        final TimeSeries timeSeries;
-        final TimeSeriesCollection data;
+        final SampleBuffer buffer;
+        final SeriesDataset data;
 
         XYLineAndShapeRenderer getRenderer() {
             return PlotPanel.this.getRenderer(index);
@@ -92,8 +110,13 @@ public class PlotPanel extends javax.swing.JPanel {
         Range getRange(){
             return plotSeries.isFixedRange() ? new Range(plotSeries.getRangeMin(), plotSeries.getRangeMax()) : null;
         }
+
+        PlotPanel getPanel() {
+            return PlotPanel.this;
+        }
     }
     final List<SeriesInfo> series;
+    final List<SeriesInfo> seriesByIndex = new ArrayList<>(); //Indexed by dataset index, null if removed
 
     final Shape marker;
     Font tickLabelFont = new Font(Font.SANS_SERIF, 0, 10);
@@ -128,14 +151,16 @@ public class PlotPanel extends javax.swing.JPanel {
 
         series = new ArrayList<>();
         marker = new Rectangle2D.Double(-1, -1, 2, 2);
-        chart = ChartFactory.createTimeSeriesChart(null,
-                "Time",
-                null,
-                new TimeSeriesCollection(),
-                true,
-                true,
-                false
-        );
+        StripDateAxis timeAxis = new StripDateAxis("Time");
+        timeAxis.setLowerMargin(0.02);
+        timeAxis.setUpperMargin(0.02);
+        NumberAxis valueAxis = new NumberAxis();
+        valueAxis.setAutoRangeIncludesZero(false);
+        XYLineAndShapeRenderer defaultRenderer = new XYLineAndShapeRenderer(true, false);
+        defaultRenderer.setBaseToolTipGenerator(StandardXYToolTipGenerator.getTimeSeriesInstance());
+        StripPlot stripPlot = new StripPlot(new TimeSeriesCollection(), timeAxis, valueAxis, defaultRenderer);
+        chart = new JFreeChart(null, JFreeChart.DEFAULT_TITLE_FONT, stripPlot, true);
+        ChartFactory.getChartTheme().apply(chart);
 
         // Customize legend
         chart.getLegend().setVisible(false);
@@ -177,19 +202,90 @@ public class PlotPanel extends javax.swing.JPanel {
         setLayout(new java.awt.BorderLayout());
         boolean userBuffer = !App.isMac();
         chartPanel = new ChartPanel(chart, userBuffer) {
+            @Override
+            public void paintComponent(Graphics g) {
+                if (!paintRendered(g)) {
+                    synchronized (renderLock) {
+                        updateDecimation();
+                        super.paintComponent(g);
+                        updateDataWidth(getChartRenderingInfo());
+                    }
+                }
+            }
+
+            @Override
+            public void chartChanged(ChartChangeEvent event) {
+                super.chartChanged(event);
+                if (!updating) {
+                    //Only the data updates can be scrolled
+                    fullRender = true;
+                }
+                scheduleRender();
+            }
+
+            //Mouse and menu handlers change the axes: not while drawing
+            @Override
+            public void mousePressed(MouseEvent e) {
+                //Zooming and panning are drawn synchronously
+                interacting = true;
+                synchronized (renderLock) {
+                    super.mousePressed(e);
+                }
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                synchronized (renderLock) {
+                    super.mouseDragged(e);
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                synchronized (renderLock) {
+                    super.mouseReleased(e);
+                }
+                interacting = false;
+                fullRender = true;
+                scheduleRender();
+            }
+
+            @Override
+            protected void processMouseWheelEvent(MouseWheelEvent e) {
+                synchronized (renderLock) {
+                    super.processMouseWheelEvent(e);
+                }
+            }
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                synchronized (renderLock) {
+                    super.actionPerformed(e);
+                }
+            }
+
+            @Override
+            public void restoreAutoBounds() {
+                synchronized (renderLock) {
+                    super.restoreAutoBounds();
+                }
+            }
+
             @Override
             public void restoreAutoRangeBounds() {
-                super.restoreAutoRangeBounds();
-                for (int i = 0; i < getNumberOfSeries(); i++) {
-                    ValueAxis axis = plot.getRangeAxis(i);
-                    Range range = getSeriesInfo(i).getRange();
-                    if (range != null) {
-                        axis.setRangeWithMargins(range);
-                    } else {
-                        axis.setAutoRange(true);
+                synchronized (renderLock) {
+                    super.restoreAutoRangeBounds();
+                    for (int i = 0; i < getNumberOfSeries(); i++) {
+                        ValueAxis axis = plot.getRangeAxis(i);
+                        Range range = getSeriesInfo(i).getRange();
+                        if (range != null) {
+                            axis.setRangeWithMargins(range);
+                        } else {
+                            axis.setAutoRange(true);
+                        }
                     }
+                    chart.getXYPlot().getDomainAxis().setAutoRange(scrollMode);
                 }
-                chart.getXYPlot().getDomainAxis().setAutoRange(scrollMode);
             }
         };
 
@@ -217,65 +313,324 @@ public class PlotPanel extends javax.swing.JPanel {
     XYPlot getPlot(){
         return chart.getXYPlot();
     }
+
+    /**
+     * If true the chart is drawn in a background thread from snapshots of the
+     * visible data, and painting just copies the latest frame.
+     */
+    public void setBackgroundRendering(boolean value) {
+        if (value != isBackgroundRendering()) {
+            if (value) {
+                backgroundRenderer = new BackgroundRenderer(chart, renderLock) {
+                    @Override
+                    protected void onStart() {
+                        for (SeriesInfo s : series) {
+                            s.data.acquireSnapshot();
+                        }
+                    }
+
+                    @Override
+                    protected void onFinish() {
+                        for (SeriesInfo s : series) {
+                            s.data.releaseSnapshot();
+                        }
+                    }
+
+                    @Override
+                    protected void onRendered(BackgroundRenderer.Frame frame) {
+                        PlotPanel.this.onRendered(frame);
+                    }
+                };
+                fullRender = true;
+                scheduleRender();
+            } else {
+                backgroundRenderer.close();
+                backgroundRenderer = null;
+                renderedFrame = null;
+                mirror = null;
+                chartPanel.chartChanged(null);
+            }
+        }
+    }
+
+    public boolean isBackgroundRendering() {
+        return backgroundRenderer != null;
+    }
+
+    /**
+     * Coalesces the chart changes of an event dispatch in a single request.
+     */
+    void scheduleRender() {
+        if ((backgroundRenderer != null) && !renderScheduled && SwingUtilities.isEventDispatchThread()) {
+            renderScheduled = true;
+            SwingUtilities.invokeLater(() -> {
+                renderScheduled = false;
+                requestRender();
+            });
+        }
+    }
+
+    /**
+     * Publishes the visible data and requests a frame to the render thread.
+     * Sizes out of the chart panel draw limits are painted synchronously.
+     */
+    void requestRender() {
+        if ((backgroundRenderer != null) && SwingUtilities.isEventDispatchThread() && isShowing()) {
+            Insets insets = chartPanel.getInsets();
+            int width = chartPanel.getWidth() - insets.left - insets.right;
+            int height = chartPanel.getHeight() - insets.top - insets.bottom;
+            if ((width >= chartPanel.getMinimumDrawWidth()) && (width <= chartPanel.getMaximumDrawWidth())
+                    && (height >= chartPanel.getMinimumDrawHeight()) && (height <= chartPanel.getMaximumDrawHeight())) {
+                updateDecimation();
+                Range domain = chart.getXYPlot().getDomainAxis().getRange();
+                for (SeriesInfo s : series) {
+                    s.data.publish(domain);
+                }
+                backgroundRenderer.request(width, height, chartPanel.getChartRenderingInfo().getEntityCollection() != null, !fullRender);
+                fullRender = false;
+            }
+        }
+    }
+
+    void onRendered(BackgroundRenderer.Frame frame) {
+        renderedFrame = frame;
+        ChartRenderingInfo info = frame.getInfo();
+        updateDataWidth(info);
+        //Scrolled frames only transfer the redrawn regions to the mirror
+        if ((mirror != null) && (frame.getScrolled() != null) && (frame.getPreviousId() == mirrorFrame)) {
+            Rectangle scrolled = frame.getScrolled();
+            Graphics2D g = mirror.createGraphics();
+            g.copyArea(scrolled.x + frame.getShift(), scrolled.y, scrolled.width, scrolled.height, -frame.getShift(), 0);
+            for (Rectangle r : frame.getDirtyRegions()) {
+                g.drawImage(frame.getImage(), r.x, r.y, r.x + r.width, r.y + r.height, r.x, r.y, r.x + r.width, r.y + r.height, null);
+            }
+            g.dispose();
+            mirrorFrame = frame.getId();
+        } else {
+            mirrorFrame = -1;
+        }
+        //Mouse handling of the chart panel uses the rendering info of the last frame
+        ChartRenderingInfo current = chartPanel.getChartRenderingInfo();
+        current.setChartArea(info.getChartArea());
+        current.getPlotInfo().setPlotArea(info.getPlotInfo().getPlotArea());
+        current.getPlotInfo().setDataArea(info.getPlotInfo().getDataArea());
+        if (current.getEntityCollection() != null) {
+            current.setEntityCollection(info.getEntityCollection());
+        }
+        chartPanel.repaint();
+    }
+
+    /**
+     * Paints the last rendered frame, if available and with the current size.
+     */
+    boolean paintRendered(Graphics g) {
+        BackgroundRenderer.Frame frame = renderedFrame;
+        if ((backgroundRenderer == null) || (frame == null) || interacting) {
+            return false;
+        }
+        BufferedImage image = frame.getImage();
+        Insets insets = chartPanel.getInsets();
+        if ((image.getWidth() != chartPanel.getWidth() - insets.left - insets.right)
+                || (image.getHeight() != chartPanel.getHeight() - insets.top - insets.bottom)) {
+            fullRender = true;
+            scheduleRender();
+            return false;
+        }
+        g.setColor(chartPanel.getBackground());
+        g.fillRect(0, 0, chartPanel.getWidth(), chartPanel.getHeight());
+        if (updateMirror(frame)) {
+            g.drawImage(mirror, insets.left, insets.top, null);
+            if (!mirror.contentsLost()) {
+                return true;
+            }
+            mirrorFrame = -1;
+        }
+        g.drawImage(image, insets.left, insets.top, null);
+        return true;
+    }
+
+    /**
+     * Makes the mirror hold the frame, copying it fully if needed.
+     */
+    boolean updateMirror(BackgroundRenderer.Frame frame) {
+        BufferedImage image = frame.getImage();
+        if ((mirror == null) || (mirror.getWidth() != image.getWidth()) || (mirror.getHeight() != image.getHeight())
+                || (mirror.validate(chartPanel.getGraphicsConfiguration()) == VolatileImage.IMAGE_INCOMPATIBLE)) {
+            mirror = chartPanel.createVolatileImage(image.getWidth(), image.getHeight());
+            mirrorFrame = -1;
+            if (mirror == null) {
+                return false;
+            }
+            mirror.validate(chartPanel.getGraphicsConfiguration());
+        } else if (mirror.contentsLost()) {
+            mirrorFrame = -1;
+        }
+        if (mirrorFrame != frame.getId()) {
+            Graphics2D g = mirror.createGraphics();
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+            mirrorFrame = frame.getId();
+        }
+        return true;
+    }
+
+    /**
+     * Date axis aligning the fixed auto range to whole pixels of the data
+     * area, so that scrolling shifts the plot by a whole number of pixels.
+     */
+    static class StripDateAxis extends DateAxis {
+
+        double dataWidth;
+
+        StripDateAxis(String label) {
+            super(label);
+        }
+
+        @Override
+        protected void autoAdjustRange() {
+            super.autoAdjustRange();
+            double length = getFixedAutoRange();
+            if ((length > 0) && (dataWidth > 0)) {
+                double pixel = length / dataWidth;
+                double upper = Math.ceil(getUpperBound() / pixel) * pixel;
+                setRange(new DateRange(upper - length, upper), false, false);
+            }
+        }
+    }
+
+    /**
+     * Plot resolving the data range of the axes directly from the series
+     * datasets: XYPlot looks up the datasets mapped to an axis with linear
+     * scans, making auto-range quadratic in the number of curves.
+     */
+    class StripPlot extends XYPlot {
+
+        Map<ValueAxis, Integer> rangeAxisIndexes;
+
+        StripPlot(XYDataset dataset, ValueAxis domainAxis, ValueAxis rangeAxis, XYItemRenderer renderer) {
+            super(dataset, domainAxis, rangeAxis, renderer);
+        }
+
+        @Override
+        public void setRangeAxis(int index, ValueAxis axis, boolean notify) {
+            if (rangeAxisIndexes == null) {
+                rangeAxisIndexes = new IdentityHashMap<>();
+            }
+            ValueAxis existing = getRangeAxis(index);
+            //When series are remapped the existing axis may have been set to another index
+            if ((existing != null) && Integer.valueOf(index).equals(rangeAxisIndexes.get(existing))) {
+                rangeAxisIndexes.remove(existing);
+            }
+            if (axis != null) {
+                rangeAxisIndexes.put(axis, index);
+            }
+            super.setRangeAxis(index, axis, notify);
+        }
+
+        @Override
+        public Range getDataRange(ValueAxis axis) {
+            if (axis == getDomainAxis()) {
+                Range ret = null;
+                for (SeriesInfo s : series) {
+                    ret = Range.combine(ret, s.data.getDomainBounds(false));
+                }
+                return ret;
+            }
+            Integer index = (rangeAxisIndexes == null) ? null : rangeAxisIndexes.get(axis);
+            SeriesInfo info = (index == null) ? null : getSeriesInfo(index);
+            if (info == null) {
+                return super.getDataRange(axis);
+            }
+            //The renderer of the active series may have been moved to the auxiliary index
+            XYItemRenderer renderer = PlotPanel.this.getRenderer(index);
+            if ((renderer == null) || !renderer.isSeriesVisible(0)) {
+                return null;
+            }
+            List keys = Collections.singletonList(info.data.getSeriesKey(0));
+            return info.data.getRangeBounds(keys, getDomainAxis().getRange(), false);
+        }
+    }
+
+    void updateDataWidth(ChartRenderingInfo info) {
+        ValueAxis axis = chart.getXYPlot().getDomainAxis();
+        if (axis instanceof StripDateAxis) {
+            ((StripDateAxis) axis).dataWidth = info.getPlotInfo().getDataArea().getWidth();
+        }
+    }
     
+    //Axes are changed holding the render lock, as they are read while drawing
     void moverOverPlot(XYDataItem translationVector, int index) {
-        double translatedDomainIntervalMin = chart.getXYPlot().getDomainAxis().getRange().getLowerBound() + translationVector.getX().doubleValue();
-        double translatedDomainIntervalMax = chart.getXYPlot().getDomainAxis().getRange().getUpperBound() + translationVector.getX().doubleValue();
-        double translatedRangeIntervalMin = chart.getXYPlot().getRangeAxis(index).getRange().getLowerBound() + translationVector.getY().doubleValue();
-        double translatedRangeIntervalMax = chart.getXYPlot().getRangeAxis(index).getRange().getUpperBound() + translationVector.getY().doubleValue();
-
-        Range domainAxisRange = new Range(translatedDomainIntervalMin, translatedDomainIntervalMax);
-        Range rangeAxisRange = new Range(translatedRangeIntervalMin, translatedRangeIntervalMax);
-        //We set notify to false in the first call..
-        chart.getXYPlot().getDomainAxis().setRange(domainAxisRange, true, false);
-        //...and true in the last
-        chart.getXYPlot().getRangeAxis(index).setRange(rangeAxisRange, true, true);
-
+        synchronized (renderLock) {
+            double translatedDomainIntervalMin = chart.getXYPlot().getDomainAxis().getRange().getLowerBound() + translationVector.getX().doubleValue();
+            double translatedDomainIntervalMax = chart.getXYPlot().getDomainAxis().getRange().getUpperBound() + translationVector.getX().doubleValue();
+            double translatedRangeIntervalMin = chart.getXYPlot().getRangeAxis(index).getRange().getLowerBound() + translationVector.getY().doubleValue();
+            double translatedRangeIntervalMax = chart.getXYPlot().getRangeAxis(index).getRange().getUpperBound() + translationVector.getY().doubleValue();
+
+            Range domainAxisRange = new Range(translatedDomainIntervalMin, translatedDomainIntervalMax);
+            Range rangeAxisRange = new Range(translatedRangeIntervalMin, translatedRangeIntervalMax);
+            //We set notify to false in the first call..
+            chart.getXYPlot().getDomainAxis().setRange(domainAxisRange, true, false);
+            //...and true in the last
+            chart.getXYPlot().getRangeAxis(index).setRange(rangeAxisRange, true, true);
+        }
     }  
     
     void moveY(double offset, int index) {
-        XYDataItem translationVector = new XYDataItem(0.0, offset);
-        double translatedRangeIntervalMin = chart.getXYPlot().getRangeAxis(index).getRange().getLowerBound() + translationVector.getY().doubleValue();
-        double translatedRangeIntervalMax = chart.getXYPlot().getRangeAxis(index).getRange().getUpperBound() + translationVector.getY().doubleValue();
-        Range rangeAxisRange = new Range(translatedRangeIntervalMin, translatedRangeIntervalMax);
-        chart.getXYPlot().getRangeAxis(index).setRange(rangeAxisRange, true, true);
+        synchronized (renderLock) {
+            XYDataItem translationVector = new XYDataItem(0.0, offset);
+            double translatedRangeIntervalMin = chart.getXYPlot().getRangeAxis(index).getRange().getLowerBound() + translationVector.getY().doubleValue();
+            double translatedRangeIntervalMax = chart.getXYPlot().getRangeAxis(index).getRange().getUpperBound() + translationVector.getY().doubleValue();
+            Range rangeAxisRange = new Range(translatedRangeIntervalMin, translatedRangeIntervalMax);
+            chart.getXYPlot().getRangeAxis(index).setRange(rangeAxisRange, true, true);
+        }
     }    
     
     void moveX(double offset) {
-        XYDataItem translationVector = new XYDataItem(offset, 0.0);
-        double translatedDomainIntervalMin = chart.getXYPlot().getDomainAxis().getRange().getLowerBound() + translationVector.getX().doubleValue();
-        double translatedDomainIntervalMax = chart.getXYPlot().getDomainAxis().getRange().getUpperBound() + translationVector.getX().doubleValue();
-        Range domainAxisRange = new Range(translatedDomainIntervalMin, translatedDomainIntervalMax);
-        chart.getXYPlot().getDomainAxis().setRange(domainAxisRange, true, false);
+        synchronized (renderLock) {
+            XYDataItem translationVector = new XYDataItem(offset, 0.0);
+            double translatedDomainIntervalMin = chart.getXYPlot().getDomainAxis().getRange().getLowerBound() + translationVector.getX().doubleValue();
+            double translatedDomainIntervalMax = chart.getXYPlot().getDomainAxis().getRange().getUpperBound() + translationVector.getX().doubleValue();
+            Range domainAxisRange = new Range(translatedDomainIntervalMin, translatedDomainIntervalMax);
+            chart.getXYPlot().getDomainAxis().setRange(domainAxisRange, true, false);
+        }
     }      
     
     void zoomOutX() {                                               
-        if (scrollMode){
-            moveX(-chart.getXYPlot().getDomainAxis().getRange().getLength()/2);
-        }        
-        getPlot().zoomDomainAxes(2.0, null, null);
+        synchronized (renderLock) {
+            if (scrollMode){
+                moveX(-chart.getXYPlot().getDomainAxis().getRange().getLength()/2);
+            }        
+            getPlot().zoomDomainAxes(2.0, null, null);
+        }
     }                                              
 
     void zoomInX() {                                              
-        getPlot().zoomDomainAxes(0.5, null, null);
-        if (scrollMode){
-            moveX(chart.getXYPlot().getDomainAxis().getRange().getLength()/2);
+        synchronized (renderLock) {
+            getPlot().zoomDomainAxes(0.5, null, null);
+            if (scrollMode){
+                moveX(chart.getXYPlot().getDomainAxis().getRange().getLength()/2);
+            }
         }
     }                                             
 
     void zoomOutY() {                                               
-        getPlot().zoomRangeAxes(2.0, null, null);
+        synchronized (renderLock) {
+            getPlot().zoomRangeAxes(2.0, null, null);
+        }
     }                                              
 
     void zoomInY() {                                              
-        getPlot().zoomRangeAxes(0.5, null, null);
+        synchronized (renderLock) {
+            getPlot().zoomRangeAxes(0.5, null, null);
+        }
     }       
 
     void panLeft(){                                       
         try{
             //getPlot().panDomainAxes(-50.0, null, null);
-            moveX(-((DateAxis) chart.getXYPlot().getDomainAxis()).getTickUnit().getSize());
-
+            synchronized (renderLock) {
+                moveX(-((DateAxis) chart.getXYPlot().getDomainAxis()).getTickUnit().getSize());
+            }
         } catch (Exception ex){
             SwingUtils.showException(this, ex);
         }
@@ -284,7 +639,9 @@ public class PlotPanel extends javax.swing.JPanel {
     void panRight(){                                                   
         try{
             //getPlot().panDomainAxes(50.0, null, null);
-           moveX(((DateAxis) chart.getXYPlot().getDomainAxis()).getTickUnit().getSize());
+            synchronized (renderLock) {
+                moveX(((DateAxis) chart.getXYPlot().getDomainAxis()).getTickUnit().getSize());
+            }
         } catch (Exception ex){
             SwingUtils.showException(this, ex);
         }
@@ -293,8 +650,10 @@ public class PlotPanel extends javax.swing.JPanel {
     void panUp(){                                                  
         try{
             //plotPanel.getPlot().panRangeAxes(50.0, null, null);
-            for (int i = 0; i < chart.getXYPlot().getRangeAxisCount(); i++) {
-                moveY(((NumberAxis) chart.getXYPlot().getRangeAxis(i)).getTickUnit().getSize(),i);
+            synchronized (renderLock) {
+                for (int i = 0; i < chart.getXYPlot().getRangeAxisCount(); i++) {
+                    moveY(((NumberAxis) chart.getXYPlot().getRangeAxis(i)).getTickUnit().getSize(),i);
+                }
             }
         } catch (Exception ex){
             SwingUtils.showException(this, ex);
@@ -304,8 +663,10 @@ public class PlotPanel extends javax.swing.JPanel {
     void panDown(){                                              
         try{
             //plotPanel.getPlot().panRangeAxes(-50.0, null, null);
-            for (int i = 0; i < chart.getXYPlot().getRangeAxisCount(); i++) {
-                moveY(-((NumberAxis) chart.getXYPlot().getRangeAxis(i)).getTickUnit().getSize(),i);
+            synchronized (renderLock) {
+                for (int i = 0; i < chart.getXYPlot().getRangeAxisCount(); i++) {
+                    moveY(-((NumberAxis) chart.getXYPlot().getRangeAxis(i)).getTickUnit().getSize(),i);
+                }
             }
         } catch (Exception ex){
             SwingUtils.showException(this, ex);
@@ -315,9 +676,10 @@ public class PlotPanel extends javax.swing.JPanel {
     void setScrollMode(boolean value){
         scrollMode = value;
         if (!value){
-            if (chart.getXYPlot().getDomainAxis().isAutoRange()){
-                chart.getXYPlot().getDomainAxis().setAutoRange(value);
-                
+            synchronized (renderLock) {
+                if (chart.getXYPlot().getDomainAxis().isAutoRange()){
+                    chart.getXYPlot().getDomainAxis().setAutoRange(value);
+                }
             }
         }
         updateTooltips();
@@ -329,8 +691,10 @@ public class PlotPanel extends javax.swing.JPanel {
     
     void setAutoScale(boolean value){
         autoScale = value;
-        for (SeriesInfo s : series) {
-            applyRange(s.index, s.getRange());
+        synchronized (renderLock) {
+            for (SeriesInfo s : series) {
+                applyRange(s.index, s.getRange());
+            }
         }
     }
     
@@ -339,31 +703,51 @@ public class PlotPanel extends javax.swing.JPanel {
     }
 
     SeriesInfo getSeriesInfo(int index) {
-        for (SeriesInfo info : series) {
-            if (info.index == index) {
-                return info;
-            }
-        }
-        return null;
+        return ((index >= 0) && (index < seriesByIndex.size())) ? seriesByIndex.get(index) : null;
     }
 
     SeriesInfo getSeriesInfo(PlotSeries plotSeries) {
-        for (SeriesInfo info : series) {
-            if (info.plotSeries == plotSeries) {
-                return info;
+        SeriesInfo info = plotSeries.info;
+        return ((info != null) && (info.getPanel() == this)) ? info : null;
+    }
+
+    void addSeriesInfo(SeriesInfo info) {
+        series.add(info);
+        while (seriesByIndex.size() <= info.index) {
+            seriesByIndex.add(null);
+        }
+        seriesByIndex.set(info.index, info);
+        info.plotSeries.info = info;
+    }
+
+    void removeSeriesInfo(SeriesInfo info) {
+        info.data.remove();
+        series.remove(info);
+        seriesByIndex.set(info.index, null);
+        if (info.plotSeries.info == info) {
+            info.plotSeries.info = null;
+        }
+    }
+
+    void removeAllSeriesInfo() {
+        for (SeriesInfo s : series) {
+            s.data.remove();
+            if (s.plotSeries.info == s) {
+                s.plotSeries.info = null;
             }
         }
-        return null;
+        series.clear();
+        seriesByIndex.clear();
     }
 
-    TimeSeriesCollection getData(int index) {
+    SeriesDataset getData(int index) {
         SeriesInfo info = getSeriesInfo(index);
         return (info == null) ? null : info.data;
     }
 
-    TimeSeries getTimeSeries(int index) {
+    SampleBuffer getBuffer(int index) {
         SeriesInfo info = getSeriesInfo(index);
-        return (info == null) ? null : info.timeSeries;
+        return (info == null) ? null : info.buffer;
     }
 
     XYLineAndShapeRenderer getRenderer(int index) {
@@ -376,8 +760,10 @@ public class PlotPanel extends javax.swing.JPanel {
     }
 
     public void setAntiAlias(boolean value) {
-        if (chart != null) {
-            chart.setAntiAlias(value);
+        synchronized (renderLock) {
+            if (chart != null) {
+                chart.setAntiAlias(value);
+            }
         }
     }
 
@@ -389,17 +775,21 @@ public class PlotPanel extends javax.swing.JPanel {
     }
 
     public void setLabelFont(Font f) {
-        labelFont = f;
-        XYPlot plot = chart.getXYPlot();
-        plot.getDomainAxis().setLabelFont(f);
-        plot.getRangeAxis().setLabelFont(f);
+        synchronized (renderLock) {
+            labelFont = f;
+            XYPlot plot = chart.getXYPlot();
+            plot.getDomainAxis().setLabelFont(f);
+            plot.getRangeAxis().setLabelFont(f);
+        }
     }
 
     public void setTickLabelFont(Font f) {
-        tickLabelFont = f;
-        XYPlot plot = chart.getXYPlot();
-        plot.getDomainAxis().setTickLabelFont(f);
-        plot.getRangeAxis().setTickLabelFont(f);
+        synchronized (renderLock) {
+            tickLabelFont = f;
+            XYPlot plot = chart.getXYPlot();
+            plot.getDomainAxis().setTickLabelFont(f);
+            plot.getRangeAxis().setTickLabelFont(f);
+        }
     }
 
     public Font getLabelFont() {
@@ -471,39 +861,51 @@ public class PlotPanel extends javax.swing.JPanel {
 
         JMenuItem menuSaveTxt = new JMenuItem("TXT...");
         menuSaveTxt.addActionListener((ActionEvent e) -> {
-            JFileChooser chooser = new JFileChooser();
-            FileNameExtensionFilter filter = new FileNameExtensionFilter("Text files", "txt");
-            chooser.setFileFilter(filter);
-            if (chooser.showSaveDialog(PlotPanel.this) == JFileChooser.APPROVE_OPTION) {
-                String fileName = chooser.getSelectedFile().getAbsolutePath();
-                if (!fileName.contains(".")) {
-                    fileName += ".txt";
-                }
-                try {
-                    saveData(fileName);
-                } catch (IOException ex) {
-                    SwingUtils.showException(PlotPanel.this, ex);
-                }
+            String fileName = getSaveFileName("Text files", "txt");
+            if (fileName != null) {
+                saveDataAsync(fileName, false);
+            }
+        });
+        JMenuItem menuSaveBinary = new JMenuItem("Binary...");
+        menuSaveBinary.addActionListener((ActionEvent e) -> {
+            String fileName = getSaveFileName("Binary data files", DataFile.EXTENSION);
+            if (fileName != null) {
+                saveDataAsync(fileName, true);
             }
-
         });
         try {
             JMenu menuSave = (JMenu) getPopupMenu().getComponent(3);
             menuSave.add(menuSaveTxt);
+            menuSave.add(menuSaveBinary);
         } catch (Exception ex) {
             Logger.getLogger(PlotPanel.class.getName()).log(Level.INFO, null, ex);
         }
     }
 
+    String getSaveFileName(String description, String extension) {
+        JFileChooser chooser = new JFileChooser();
+        FileNameExtensionFilter filter = new FileNameExtensionFilter(description, extension);
+        chooser.setFileFilter(filter);
+        if (chooser.showSaveDialog(PlotPanel.this) == JFileChooser.APPROVE_OPTION) {
+            String fileName = chooser.getSelectedFile().getAbsolutePath();
+            if (!fileName.contains(".")) {
+                fileName += "." + extension;
+            }
+            return fileName;
+        }
+        return null;
+    }
+
     public void saveData(String filename) throws IOException {
         saveData(filename, isSparse());
     }
 
     public void saveData(String filename, boolean sparse) throws IOException {
-        String data = getDataAsString();
-        if (data != null) {
-            Files.write(Paths.get(filename), data.getBytes());
-        }
+        createExporter(sparse).write(Paths.get(filename), null);
+    }
+
+    public void saveBinaryData(String filename) throws IOException {
+        createExporter(false).writeBinary(Paths.get(filename), null);
     }
 
     boolean sparse = true;
@@ -516,83 +918,180 @@ public class PlotPanel extends javax.swing.JPanel {
         sparse = value;
     }
 
-    protected String getDataAsString() {
-        StringBuilder str = new StringBuilder(1024);
-
-        if (isSparse()) {
-            for (int i = 0; i < series.size(); i++) {
-                List<TimestampedValue<Double>> values = getSeriesData(i);
-                str.append("#Series: ").append(getSeriesName(i)).append(LINE_SEPARATOR);
-                Double last = null;
-                for (TimestampedValue<Double> item : values) {
-                    Double val = item.getValue();
-                    if (val == null) {
-                        val = Double.NaN;
-                    }
-                    if (!val.equals(last)) {
-                        last = val;
-                        str.append(new SimpleDateFormat("dd/MM/YY HH:mm:ss.SSS ").format(item.getTimestamp()));
-                        str.append(String.valueOf(val));
-                        str.append(LINE_SEPARATOR);
-                    }
+    /**
+     * Writes the data in a background thread, showing the progress.
+     */
+    public void saveDataAsync(String filename, boolean binary) {
+        DataExporter exporter = createExporter(binary ? false : isSparse());
+        ProgressMonitor monitor = new ProgressMonitor(this, "Saving " + filename, null, 0, 100);
+        monitor.setMillisToDecideToPopup(200);
+        Thread thread = new Thread(() -> {
+            try {
+                DataExporter.Progress progress = (rows, total) -> {
+                    int percent = (total == 0) ? 100 : (int) (rows * 100 / total);
+                    SwingUtilities.invokeLater(() -> {
+                        if (monitor.isCanceled()) {
+                            exporter.cancel();
+                        } else {
+                            monitor.setProgress(percent);
+                        }
+                    });
+                };
+                if (binary) {
+                    exporter.writeBinary(Paths.get(filename), progress);
+                } else {
+                    exporter.write(Paths.get(filename), progress);
                 }
-                str.append(LINE_SEPARATOR);
-            }
-        } else {
-            //Header
-            int numSeries = series.size();
-            str.append("Time").append(FIELD_SEPARATOR);
-            for (int i = 0; i < numSeries; i++) {
-                str.append(series.get(i).plotSeries.name)
-                        .append(" [").append(series.get(i).plotSeries.units).append("]").
-                        append(FIELD_SEPARATOR);
+            } catch (CancellationException ex) {
+            } catch (Exception ex) {
+                SwingUtilities.invokeLater(() -> {
+                    SwingUtils.showException(PlotPanel.this, ex);
+                });
+            } finally {
+                SwingUtilities.invokeLater(() -> {
+                    monitor.close();
+                });
             }
-            str.append(LINE_SEPARATOR);
+        }, "Data export");
+        thread.setDaemon(true);
+        thread.start();
+    }
 
-            List<List<TimestampedValue<Double>>> values = new ArrayList<>();
-            String[] format = new String[numSeries];
+    /**
+     * Detached copies of the series settings, safe to read in other threads.
+     */
+    PlotSeries[] copySeries() {
+        PlotSeries[] ret = new PlotSeries[series.size()];
+        for (int i = 0; i < ret.length; i++) {
+            PlotSeries s = series.get(i).plotSeries;
+            ret[i] = new PlotSeries(getSeriesName(i), s.getColor(), s.getPrecision(), s.getRangeMin(), s.getRangeMax(),
+                    s.getUnits(), s.getDesc(), s.isLogaritimic(), s.lineWidth, s.numSamples);
+        }
+        return ret;
+    }
 
+    /**
+     * Copies the series data, to be written by the returned exporter in any
+     * thread. Must be called in the event dispatch thread.
+     */
+    DataExporter createExporter(boolean sparse) {
+        int numSeries = series.size();
+        PlotSeries[] copies = copySeries();
+        double[][] values = new double[numSeries][];
+        for (int i = 0; i < numSeries; i++) {
+            SeriesInfo info = series.get(i);
+            values[i] = info.data.buffer.copyValues(info.data.column);
+        }
+        SampleBuffer shared = sparse ? null : getSharedBuffer();
+        long[][] times;
+        if (shared != null) {
+            times = new long[][]{shared.copyTimes()};
+        } else {
+            times = new long[numSeries][];
             for (int i = 0; i < numSeries; i++) {
-                values.add(getSeriesData(i));
-                format[i] = "";
-
+                times[i] = series.get(i).data.buffer.copyTimes();
             }
-            int itemCount = values.size() > 0 ? values.get(0).size() : 0;
+        }
+        return new DataExporter(sparse, copies, times, values);
+    }
 
-            //If series was appended , may contain less points;
-            int offsets[] = new int[numSeries];
-            for (int i = 0; i < numSeries; i++) {
-                offsets[i] = Math.max(itemCount - values.get(i).size(), 0);
+    /**
+     * Replaces the series by the content of a data file. The plot is stopped:
+     * the data is displayed as stored.
+     */
+    public void loadData(DataFile file) {
+        stop();
+        removeAllSeries();
+        setSparse(!file.isShared());
+        PlotSeries[] curves = file.getSeries();
+        for (int g = 0; g < file.getGroupCount(); g++) {
+            for (int index : file.getGroup(g)) {
+                curves[index].numSamples = Math.max(file.getRows(g), 1);
+            }
+        }
+        for (PlotSeries s : curves) {
+            addSeries(s);
+        }
+        for (int g = 0; g < file.getGroupCount(); g++) {
+            int[] group = file.getGroup(g);
+            long[] times = file.readTimes(g);
+            double[][] columns = new double[group.length][];
+            for (int j = 0; j < group.length; j++) {
+                columns[j] = file.readValues(group[j]);
+            }
+            SampleBuffer buffer = series.get(group[0]).buffer;
+            double[] row = new double[group.length];
+            for (int i = 0; i < times.length; i++) {
+                if (group.length == 1) {
+                    buffer.append(times[i], columns[0][i]);
+                } else {
+                    for (int j = 0; j < group.length; j++) {
+                        row[j] = columns[j][i];
+                    }
+                    buffer.append(times[i], row);
+                }
             }
-            double[] last = new double[numSeries];
+        }
+        notifyUpdate();
+    }
 
-            for (int i = 0; i < itemCount; i++) {
-                double[] record = new double[values.size()];
-                for (int j = 0; j < values.size(); j++) {
-                    List<TimestampedValue<Double>> data = values.get(j);
-                    int index = i - offsets[j];
-                    record[j] = (data.size() > index) && (index > 0) ? data.get(index).value : Double.NaN;
+    /**
+     * Fills the series with samples acquired before: per series the times
+     * (epoch ns, increasing), values and count. Series sharing the time
+     * column are merged in time order. A terminator follows the restored
+     * data so that it is not joined to the new samples.
+     */
+    public void restoreData(long[][] times, double[][] values, int[] sizes) {
+        if (times.length != getNumberOfSeries()) {
+            return;
+        }
+        long last = Long.MIN_VALUE;
+        SampleBuffer shared = getSharedBuffer();
+        if (shared != null) {
+            int[] positions = new int[times.length];
+            while (true) {
+                long time = Long.MAX_VALUE;
+                for (int i = 0; i < times.length; i++) {
+                    if (positions[i] < sizes[i]) {
+                        time = Math.min(time, times[i][positions[i]]);
+                    }
                 }
-                if (!Arrays.equals(last, record)) {
-                    last = record;
-                    str.append(new SimpleDateFormat("dd/MM/YY HH:mm:ss.SSS").format(values.get(0).get(i).getTimestamp()));
-                    str.append(FIELD_SEPARATOR);
-                    for (int j = 0; j < record.length; j++) {
-                        str.append(series.get(j).plotSeries.toString(record[j], false, false, false)).append(FIELD_SEPARATOR);
+                if (time == Long.MAX_VALUE) {
+                    break;
+                }
+                for (int i = 0; i < times.length; i++) {
+                    if ((positions[i] < sizes[i]) && (times[i][positions[i]] == time)) {
+                        shared.append(time, series.get(i).data.column, values[i][positions[i]++]);
                     }
-                    str.append(LINE_SEPARATOR);
                 }
-
+                last = time;
+            }
+            if (last != Long.MIN_VALUE) {
+                double[] terminators = new double[times.length];
+                Arrays.fill(terminators, Double.NaN);
+                shared.append(last + 1, terminators);
+            }
+        } else {
+            for (int i = 0; i < times.length; i++) {
+                SeriesInfo s = series.get(i);
+                for (int j = 0; j < sizes[i]; j++) {
+                    s.buffer.append(times[i][j], s.data.column, values[i][j]);
+                }
+                if (sizes[i] > 0) {
+                    s.buffer.append(times[i][sizes[i] - 1] + 1, s.data.column, Double.NaN);
+                }
             }
         }
-        return str.toString();
+        notifyUpdate();
     }
 
     int axisSize = -1;
 
     public void setAxisSize(int size) {
-        axisSize = size;
-        chart.getXYPlot().getRangeAxis().setFixedDimension(size);
+        synchronized (renderLock) {
+            axisSize = size;
+            chart.getXYPlot().getRangeAxis().setFixedDimension(size);
+        }
     }
 
     public int getAxisSize() {
@@ -604,61 +1103,79 @@ public class PlotPanel extends javax.swing.JPanel {
         super.setBackground(c);
         if (chartPanel != null) {
             chartPanel.setBackground(c);
-            chartPanel.getChart().setBackgroundPaint(c);
+            synchronized (renderLock) {
+                chartPanel.getChart().setBackgroundPaint(c);
+            }
         }
     }
 
     public void setPlotBackgroundColor(Color c) {
-        chart.getXYPlot().setBackgroundPaint(c == null ? systemBackgroundPaint : c);
+        synchronized (renderLock) {
+            chart.getXYPlot().setBackgroundPaint(c == null ? systemBackgroundPaint : c);
+        }
     }
 
     public void setPlotGridColor(Color c) {
-        chart.getXYPlot().setDomainGridlinePaint(c == null ? systemGridlinePaint : c);
-        chart.getXYPlot().setRangeGridlinePaint(c == null ? systemGridlinePaint : c);
-        chart.getXYPlot().setDomainMinorGridlinePaint(c == null ? systemGridlinePaint : c);
-        chart.getXYPlot().setRangeMinorGridlinePaint(c == null ? systemGridlinePaint : c);
+        synchronized (renderLock) {
+            chart.getXYPlot().setDomainGridlinePaint(c == null ? systemGridlinePaint : c);
+            chart.getXYPlot().setRangeGridlinePaint(c == null ? systemGridlinePaint : c);
+            chart.getXYPlot().setDomainMinorGridlinePaint(c == null ? systemGridlinePaint : c);
+            chart.getXYPlot().setRangeMinorGridlinePaint(c == null ? systemGridlinePaint : c);
+        }
     }
 
     public void setPlotOutlineColor(Color c) {
-        chart.getXYPlot().setOutlinePaint(c == null ? systemvOutlinePaint : c);
+        synchronized (renderLock) {
+            chart.getXYPlot().setOutlinePaint(c == null ? systemvOutlinePaint : c);
+        }
     }
 
     public void setDomainAxisColor(Color c) {
-        chart.getXYPlot().getDomainAxis().setLabelPaint(c == null ? systemLabelPaint : c);
-        chart.getXYPlot().getDomainAxis().setTickLabelPaint(c == null ? systemTickLabelPaint : c);
-        chart.getXYPlot().getDomainAxis().setTickMarkPaint(c == null ? systemTickMarkPaint : c);
-        chart.getXYPlot().getDomainAxis().setAxisLinePaint(c == null ? systemAxisLinePaint : c);
+        synchronized (renderLock) {
+            chart.getXYPlot().getDomainAxis().setLabelPaint(c == null ? systemLabelPaint : c);
+            chart.getXYPlot().getDomainAxis().setTickLabelPaint(c == null ? systemTickLabelPaint : c);
+            chart.getXYPlot().getDomainAxis().setTickMarkPaint(c == null ? systemTickMarkPaint : c);
+            chart.getXYPlot().getDomainAxis().setAxisLinePaint(c == null ? systemAxisLinePaint : c);
+        }
     }
 
     public void setRangeAxisColor(Color c) {
-        for (int i = 0; i < chart.getXYPlot().getRangeAxisCount(); i++) {
-            chart.getXYPlot().getRangeAxis(i).setLabelPaint(c == null ? systemLabelPaint : c);
-            chart.getXYPlot().getRangeAxis(i).setTickLabelPaint(c == null ? systemTickLabelPaint : c);
-            chart.getXYPlot().getRangeAxis(i).setTickMarkPaint(c == null ? systemTickMarkPaint : c);
-            chart.getXYPlot().getRangeAxis(i).setAxisLinePaint(c == null ? systemAxisLinePaint : c);
+        synchronized (renderLock) {
+            for (int i = 0; i < chart.getXYPlot().getRangeAxisCount(); i++) {
+                chart.getXYPlot().getRangeAxis(i).setLabelPaint(c == null ? systemLabelPaint : c);
+                chart.getXYPlot().getRangeAxis(i).setTickLabelPaint(c == null ? systemTickLabelPaint : c);
+                chart.getXYPlot().getRangeAxis(i).setTickMarkPaint(c == null ? systemTickMarkPaint : c);
+                chart.getXYPlot().getRangeAxis(i).setAxisLinePaint(c == null ? systemAxisLinePaint : c);
+            }
         }
     }
 
     public void setRangeAxisColor(int index, Color c) {
-        if (index < chart.getXYPlot().getRangeAxisCount()) {
-            chart.getXYPlot().getRangeAxis(index).setLabelPaint(c == null ? systemLabelPaint : c);
-            chart.getXYPlot().getRangeAxis(index).setTickLabelPaint(c == null ? systemTickLabelPaint : c);
-            chart.getXYPlot().getRangeAxis(index).setTickMarkPaint(c == null ? systemTickMarkPaint : c);
-            chart.getXYPlot().getRangeAxis(index).setAxisLinePaint(c == null ? systemAxisLinePaint : c);
+        synchronized (renderLock) {
+            if (index < chart.getXYPlot().getRangeAxisCount()) {
+                chart.getXYPlot().getRangeAxis(index).setLabelPaint(c == null ? systemLabelPaint : c);
+                chart.getXYPlot().getRangeAxis(index).setTickLabelPaint(c == null ? systemTickLabelPaint : c);
+                chart.getXYPlot().getRangeAxis(index).setTickMarkPaint(c == null ? systemTickMarkPaint : c);
+                chart.getXYPlot().getRangeAxis(index).setAxisLinePaint(c == null ? systemAxisLinePaint : c);
+            }
         }
     }
 
     public void setGridXVisible(boolean major, boolean minor) {
-        chart.getXYPlot().setDomainGridlinesVisible(major);
-        chart.getXYPlot().setDomainMinorGridlinesVisible(minor);
-        chart.getXYPlot().getDomainAxis().setMinorTickCount(minor ? 2 : 0);
+        synchronized (renderLock) {
+            chart.getXYPlot().setDomainGridlinesVisible(major);
+            chart.getXYPlot().setDomainMinorGridlinesVisible(minor);
+            chart.getXYPlot().getDomainAxis().setMinorTickCount(minor ? 2 : 0);
+        }
     }
 
     public void setGridYVisible(boolean major, boolean minor) {
-        chart.getXYPlot().setRangeGridlinesVisible(major);
-        chart.getXYPlot().setRangeMinorGridlinesVisible(minor);
-        for (int i = 0; i < chart.getXYPlot().getRangeAxisCount(); i++) {
-            chart.getXYPlot().getRangeAxis(i).setMinorTickCount(minor ? 2 : 0);
+        synchronized (renderLock) {
+            chart.getXYPlot().setRangeGridlinesVisible(major);
+            chart.getXYPlot().setRangeMinorGridlinesVisible(minor);
+            for (int i = 0; i < chart.getXYPlot().getRangeAxisCount(); i++) {
+                chart.getXYPlot().getRangeAxis(i).setMinorTickCount(minor ? 2 : 0);
+            }
         }
     }
 
@@ -682,7 +1199,7 @@ public class PlotPanel extends javax.swing.JPanel {
 
     public void clear() {
         for (SeriesInfo s : series) {
-            s.timeSeries.clear();
+            s.data.clear();
         }
         if (isShowing()) {
             repaint();
@@ -690,67 +1207,92 @@ public class PlotPanel extends javax.swing.JPanel {
     }
 
     public SeriesInfo addSeries(PlotSeries plotSeries) {
-        int index = (series.size() == 0) ? 0 : (series.get(series.size() - 1).index + 1);
-        TimeSeries timeSeries = new TimeSeries(plotSeries.name);
-        XYPlot plot = chart.getXYPlot();
-        TimeSeriesCollection data = new TimeSeriesCollection();
-        createAxis(index, plotSeries.units, plotSeries.isLogaritimic(), index == 0);
-        XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer();
-        renderer.setBaseShapesVisible(isMarkersVisible());
-        plot.setRenderer(index, renderer);
-        plot.setDataset(index, data);
-        plot.mapDatasetToRangeAxis(index, index);
-        setAxisSize(axisSize);      
-        SeriesInfo seriesInfo = new SeriesInfo(index, plotSeries, timeSeries, data);
-        applyRange(index, seriesInfo.getRange());
-        series.add(seriesInfo);
-
-        checkSeriesDuration();
-        data.addSeries(timeSeries);
-        seriesInfo.getRenderer().setSeriesShape(0, marker);
-        if (seriesInfo.plotSeries.getColor() != null) {
-            seriesInfo.getRenderer().setSeriesPaint(0, seriesInfo.plotSeries.getColor());
-        }
-        setLineWidth(getNumberOfSeries() - 1, plotSeries.lineWidth);
-        setNotify(getNumberOfSeries() - 1, false);        
-        setMaximumItemCount(getNumberOfSeries() - 1, plotSeries.numSamples);
-        
-        return seriesInfo;
+        synchronized (renderLock) {
+            SeriesInfo selected = restoreSelected(); //The auxiliary dataset takes the next index
+            int index = series.size();
+            //If not sparse all series are sampled together and share the time column
+            SampleBuffer buffer = (isSparse() || (series.size() == 0)) ? new SampleBuffer(1) : series.get(0).buffer;
+            SampleBuffer.Column column = buffer.addColumn();
+            XYPlot plot = chart.getXYPlot();
+            SeriesDataset data = new SeriesDataset(plotSeries.name, buffer, column);
+            createAxis(index, plotSeries.units, plotSeries.isLogaritimic(), index == 0);
+            XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer();
+            renderer.setBaseShapesVisible(isMarkersVisible());
+            plot.setRenderer(index, renderer);
+            plot.setDataset(index, data);
+            plot.mapDatasetToRangeAxis(index, index);
+            setAxisSize(axisSize);      
+            SeriesInfo seriesInfo = new SeriesInfo(index, plotSeries, buffer, data);
+            applyRange(index, seriesInfo.getRange());
+            addSeriesInfo(seriesInfo);
+
+            checkSeriesDuration();
+            seriesInfo.getRenderer().setSeriesShape(0, marker);
+            if (seriesInfo.plotSeries.getColor() != null) {
+                seriesInfo.getRenderer().setSeriesPaint(0, seriesInfo.plotSeries.getColor());
+            }
+            setLineWidth(getNumberOfSeries() - 1, plotSeries.lineWidth);
+            setNotify(getNumberOfSeries() - 1, false);        
+            setMaximumItemCount(getNumberOfSeries() - 1, plotSeries.numSamples);
+            if (selected != null) {
+                setActiveSeries(selected.index);
+            }
+            return seriesInfo;
+        }
     }
 
     public void setNotify(int index, boolean value) {
         if (index < series.size()) {
-            series.get(index).timeSeries.setNotify(value);
+            series.get(index).data.setNotifyOnAppend(value);
         }
     }
 
     public void setNotify(boolean value) {
         for (SeriesInfo s : series) {
-            s.timeSeries.setNotify(value);
+            s.data.setNotifyOnAppend(value);
         }
     }
 
     public void notifyUpdate() {
         if (isShowing()) {
             XYPlot plot = chart.getXYPlot();
-            plot.configureDomainAxes();
-            plot.configureRangeAxes();
-            chartPanel.chartChanged(null);
+            updating = true;
+            try {
+                synchronized (renderLock) {
+                    plot.configureDomainAxes();
+                    plot.configureRangeAxes();
+                }
+                chartPanel.chartChanged(null);
+            } finally {
+                updating = false;
+            }
         }
     }
 
     public void setLineWidth(int index, int width) {
-        if (index < series.size()) {
-            series.get(index).getRenderer().setSeriesStroke(0, new BasicStroke(width));
+        synchronized (renderLock) {
+            if (index < series.size()) {
+                series.get(index).getRenderer().setSeriesStroke(0, new BasicStroke(width));
+            }
         }
     }
 
+    /**
+     * Sets the number of samples retained by a series, 0 for unlimited. If
+     * not sparse the series share one buffer, so the count applies to all of
+     * them: the last one set prevails.
+     */
     public void setMaximumItemCount(int index, int count) {
         if (index < series.size()) {
-            series.get(index).timeSeries.setMaximumItemCount(count > 0 ? count : Integer.MAX_VALUE);
+            SeriesInfo info = series.get(index);
+            info.buffer.setCapacity(getBufferCapacity(count));
         }
     }
 
+    int getBufferCapacity(int count) {
+        return count > 0 ? count : Integer.MAX_VALUE;
+    }
+
     NumberAxis createAxis(int index, String label, boolean logarithmic, boolean visible) {
         XYPlot plot = chart.getXYPlot();
         NumberAxis axis;
@@ -781,51 +1323,110 @@ public class PlotPanel extends javax.swing.JPanel {
     }
 
     void applyRange(int index, Range range) {
-        if ((range == null) || autoScale) {
-            setAxisAutoScale(index);
-        } else {
-            try{
-                setAxisScale(index, range);
-            } catch (IllegalArgumentException ex){
-                logger.warning("Invalid range for series " + index + ": setting auto-scale");
+        synchronized (renderLock) {
+            if ((range == null) || autoScale) {
                 setAxisAutoScale(index);
+            } else {
+                try{
+                    setAxisScale(index, range);
+                } catch (IllegalArgumentException ex){
+                    logger.warning("Invalid range for series " + index + ": setting auto-scale");
+                    setAxisAutoScale(index);
+                }
             }
         }
     }
 
     protected void removeAllSeries() {
-        for (SeriesInfo s : series) {
-            s.data.removeAllSeries();
+        synchronized (renderLock) {
+            removeAllSeriesInfo();
+            selectedRenderer = null;
+            selectedIndex = -1;
         }
-        series.clear();
-        selectedRenderer = null;
-        selectedIndex = -1;
     }
 
     protected void removeSeries(PlotSeries plotSeries) {
-        SeriesInfo removed = getSeriesInfo(plotSeries);
-        if (removed != null) {
-            removed.data.removeAllSeries();
-            series.remove(removed);
-            if (series.size() == 0) {
-                selectedRenderer = null;
-                selectedIndex = -1;
+        synchronized (renderLock) {
+            SeriesInfo removed = getSeriesInfo(plotSeries);
+            if (removed != null) {
+                removeSeries(removed.index);
             }
         }
     }
 
+    /**
+     * Removes a series, keeping the data and axes of the others: the
+     * following series shift one index down.
+     */
     protected void removeSeries(int index) {
-        if ((index > 0) && (index < series.size())) {
-            SeriesInfo removed = series.get(index);
-            removed.data.removeAllSeries();
-            series.remove(index);
-            if (series.size() == 0) {
-                selectedRenderer = null;
-                selectedIndex = -1;
+        synchronized (renderLock) {
+            if ((index >= 0) && (index < series.size())) {
+                SeriesInfo selected = restoreSelected();
+                int last = series.size() - 1;
+                removeSeriesInfo(series.get(index));
+                remapSeries(index, last - 1);
+                XYPlot plot = chart.getXYPlot();
+                plot.setRenderer(last, null);
+                plot.setDataset(last, null);
+                if (last > 0) {
+                    plot.setRangeAxis(last, null);
+                }
+                seriesByIndex.remove(last);
+                if ((selected != null) && series.contains(selected)) {
+                    setActiveSeries(selected.index);
+                } else {
+                    selectedIndex = -1;
+                }
             }
         }
     }
 
+    /**
+     * Moves a series to another index, keeping its data, renderer and axis.
+     */
+    public void moveSeries(int from, int to) {
+        synchronized (renderLock) {
+            if ((from != to) && (from >= 0) && (from < series.size()) && (to >= 0) && (to < series.size())) {
+                SeriesInfo selected = restoreSelected();
+                SampleBuffer shared = getSharedBuffer();
+                SeriesInfo moved = series.remove(from);
+                series.add(to, moved);
+                if (shared != null) {
+                    shared.moveColumn(moved.data.column, to);
+                }
+                remapSeries(Math.min(from, to), Math.max(from, to));
+                if (selected != null) {
+                    setActiveSeries(selected.index);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the dataset indexes of the series in the range to their position
+     * in the list, moving their datasets, renderers and axes.
+     */
+    void remapSeries(int from, int to) {
+        XYPlot plot = chart.getXYPlot();
+        List<XYItemRenderer> renderers = new ArrayList<>();
+        List<ValueAxis> axes = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            SeriesInfo s = series.get(i);
+            renderers.add(plot.getRenderer(s.index));
+            axes.add(plot.getRangeAxis(s.index));
+        }
+        for (int i = from; i <= to; i++) {
+            SeriesInfo s = series.get(i);
+            s.index = i;
+            seriesByIndex.set(i, s);
+            plot.setRenderer(i, renderers.get(i - from));
+            plot.setDataset(i, s.data);
+            plot.setRangeAxis(i, axes.get(i - from));
+            plot.setRangeAxisLocation(i, AxisLocation.BOTTOM_OR_LEFT);
+            plot.mapDatasetToRangeAxis(i, i);
+        }
+    }
+
     public void updateSeries(PlotSeries series) {
         if (isShowing()) {
             repaint();
@@ -833,56 +1434,79 @@ public class PlotPanel extends javax.swing.JPanel {
     }
 
     protected void onRemovedAllSeries() {
-        for (SeriesInfo s : series) {
-            s.data.removeAllSeries();
+        synchronized (renderLock) {
+            removeAllSeriesInfo();
         }
-        series.clear();
     }
 
+    /**
+     * Returns the buffer holding all series if they share the time column, or null.
+     */
+    SampleBuffer getSharedBuffer() {
+        if (series.size() == 0) {
+            return null;
+        }
+        SampleBuffer ret = series.get(0).buffer;
+        if (ret.getColumnCount() != series.size()) {
+            return null;
+        }
+        for (int i = 0; i < series.size(); i++) {
+            if (ret.getColumn(i) != series.get(i).data.column) {
+                return null;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * time: epoch in ns
+     */
     protected void addDataPoint(int index, long time, double value) {
-        getTimeSeries(index).addOrUpdate(new FixedMillisecond(new Date(time)), (Double.isNaN(value)) ? null : value);
+        getData(index).append(time, value);
+    }
+
+    static long toNanos(long millis, long nanosOffset) {
+        return millis * 1000000L + nanosOffset;
+    }
+
+    static TimestampedValue<Double> toTimestampedValue(SampleBuffer buffer, SampleBuffer.Column column, int index) {
+        long time = buffer.getTime(index);
+        return new TimestampedValue<Double>(buffer.getValue(column, index), Math.floorDiv(time, 1000000L), Math.floorMod(time, 1000000L));
     }
 
     public int getItemCount(int index) {
-        TimeSeries s = getTimeSeries(index);
-        return s.getItemCount();
+        SampleBuffer s = getBuffer(index);
+        return s.size();
     }
 
     public List<TimestampedValue<Double>> getSeriesData(int index) {
-        TimeSeries s = getTimeSeries(index);
+        SeriesDataset s = getData(index);
         List<TimestampedValue<Double>> ret = new ArrayList<>();
         Number last = null;
-        for (TimeSeriesDataItem item : (List<TimeSeriesDataItem>) s.getItems()) {
-            Double val;
-            if (item.getValue() != null) {
-                val = item.getValue().doubleValue();
-            } else {
-                val = Double.NaN;
-            }
-
+        for (int i = 0; i < s.buffer.size(); i++) {
+            Double val = s.buffer.getValue(s.column, i);
             if (!isSparse() || !val.equals(last)) {
                 last = val;
-                ret.add(new TimestampedValue<Double>(val, item.getPeriod().getMiddleMillisecond()));
+                ret.add(toTimestampedValue(s.buffer, s.column, i));
             }
         }
         return ret;
     }
 
     public TimestampedValue<Double> getItem(int index, int itemIndex) {
-        TimeSeries s = getTimeSeries(index);
+        SeriesDataset s = getData(index);
         if (itemIndex == -1) {
-            itemIndex = s.getItemCount() - 1;
+            itemIndex = s.buffer.size() - 1;
         }
-        if ((itemIndex < 0) || (itemIndex >= s.getItemCount())) {
+        if ((itemIndex < 0) || (itemIndex >= s.buffer.size())) {
             return null;
         }
-        TimeSeriesDataItem item = s.getDataItem(itemIndex);
-        return new TimestampedValue<Double>((item.getValue() != null) ? item.getValue().doubleValue() : Double.NaN, item.getPeriod().getMiddleMillisecond());
+        return toTimestampedValue(s.buffer, s.column, itemIndex);
     }
 
     public String getSeriesName(int index) {
-        TimeSeries s = getTimeSeries(index);
-        return String.valueOf(s.getKey());
+        SeriesDataset s = getData(index);
+        return String.valueOf(s.getSeriesKey(0));
     }
 
     public void addPopupMenuItem(final JMenuItem item) {
@@ -908,8 +1532,10 @@ public class PlotPanel extends javax.swing.JPanel {
     public void setDurationMillis(int duration) {
         final XYPlot plot = chart.getXYPlot();
         ValueAxis axis = plot.getDomainAxis();
-        axis.setAutoRange(true);
-        axis.setFixedAutoRange(duration);
+        synchronized (renderLock) {
+            axis.setAutoRange(true);
+            axis.setFixedAutoRange(duration);
+        }
         checkSeriesDuration();
 
     }
@@ -923,61 +1549,80 @@ public class PlotPanel extends javax.swing.JPanel {
     }
 
     public void setLogarithmic(int index, boolean value) {
-        ValueAxis cur = chart.getXYPlot().getRangeAxis(index);
-        if (cur != null) {
-            boolean visible = cur.isVisible();
-            if (value != isLogarithmic(index)) {
-                createAxis(index, cur.getLabel(), value, visible);
-                applyRange(index, cur.isAutoRange() ? null : cur.getRange());
+        synchronized (renderLock) {
+            ValueAxis cur = chart.getXYPlot().getRangeAxis(index);
+            if (cur != null) {
+                boolean visible = cur.isVisible();
+                if (value != isLogarithmic(index)) {
+                    createAxis(index, cur.getLabel(), value, visible);
+                    applyRange(index, cur.isAutoRange() ? null : cur.getRange());
+                }
             }
         }
     }
     
     void updateLog(int index){
-        ValueAxis cur = chart.getXYPlot().getRangeAxis(index);
-        if (cur != null) {
-            boolean visible = cur.isVisible();
-            createAxis(index, cur.getLabel(), isLogarithmic(index), visible);
-            applyRange(index, cur.isAutoRange() ? null : cur.getRange());
+        synchronized (renderLock) {
+            ValueAxis cur = chart.getXYPlot().getRangeAxis(index);
+            if (cur != null) {
+                boolean visible = cur.isVisible();
+                createAxis(index, cur.getLabel(), isLogarithmic(index), visible);
+                applyRange(index, cur.isAutoRange() ? null : cur.getRange());
+            }
         }
-        
     }
 
     XYItemRenderer selectedRenderer;
     int selectedIndex = -1;
+    int selectedAuxIndex = -1;
+
+    /**
+     * Puts back the renderer of the selected series, if drawn on top through
+     * the auxiliary dataset, before the dataset indexes change. Returns the
+     * selected series, or null.
+     */
+    SeriesInfo restoreSelected() {
+        SeriesInfo ret = getSeriesInfo(selectedIndex);
+        if (selectedRenderer != null) {
+            XYPlot plot = chart.getXYPlot();
+            plot.setRenderer(selectedIndex, selectedRenderer);
+            plot.setRenderer(selectedAuxIndex, null);
+            plot.setDataset(selectedAuxIndex, null);
+            selectedRenderer = null;
+        }
+        return ret;
+    }
 
     public void setActiveSeries(int index) {
-        SeriesInfo selected = null;
-        for (SeriesInfo s : series) {
-            s.getAxis().setVisible(index == s.index);
-            if (index == s.index) {
-                selected = s;
+        synchronized (renderLock) {
+            SeriesInfo selected = null;
+            for (SeriesInfo s : series) {
+                s.getAxis().setVisible(index == s.index);
+                if (index == s.index) {
+                    selected = s;
+                }
             }
-        }
-        if ((selected != null) && bringSelectedToTheTop) {
-            //Cannot customize Z order so repeat the selected in the end so that it will be always visible
-            int aux_index = series.size();
-            XYPlot plot = chart.getXYPlot();
-            if (selectedRenderer != null) {
-                plot.setRenderer(selectedIndex, selectedRenderer);
-                plot.setRenderer(aux_index, null);
-                plot.setDataset(aux_index, null);
-                selectedRenderer = null;
-            }
-            if (index == 0) {
-                chart.getXYPlot().setDatasetRenderingOrder(DatasetRenderingOrder.REVERSE);
-            } else {
-                chart.getXYPlot().setDatasetRenderingOrder(DatasetRenderingOrder.FORWARD);
-                selectedRenderer = (XYLineAndShapeRenderer) plot.getRenderer(index);
-                plot.setRenderer(aux_index, selectedRenderer);
-                plot.setDataset(aux_index, selected.data);
-                plot.mapDatasetToRangeAxis(aux_index, index);
-                plot.setRenderer(index, null);
-                selectedRenderer.setSeriesPaint(0, selected.plotSeries.getColor());
+            if ((selected != null) && bringSelectedToTheTop) {
+                //Cannot customize Z order so repeat the selected in the end so that it will be always visible
+                int aux_index = series.size();
+                XYPlot plot = chart.getXYPlot();
+                restoreSelected();
+                if (index == 0) {
+                    chart.getXYPlot().setDatasetRenderingOrder(DatasetRenderingOrder.REVERSE);
+                } else {
+                    chart.getXYPlot().setDatasetRenderingOrder(DatasetRenderingOrder.FORWARD);
+                    selectedRenderer = (XYLineAndShapeRenderer) plot.getRenderer(index);
+                    selectedAuxIndex = aux_index;
+                    plot.setRenderer(aux_index, selectedRenderer);
+                    plot.setDataset(aux_index, selected.data);
+                    plot.mapDatasetToRangeAxis(aux_index, index);
+                    plot.setRenderer(index, null);
+                    selectedRenderer.setSeriesPaint(0, selected.plotSeries.getColor());
+                }
             }
+            updateLog(index);
+            selectedIndex = index;
         }
-        updateLog(index);
-        selectedIndex = index;
     }
 
     public SeriesInfo getActiveSeries() {
@@ -1006,21 +1651,23 @@ public class PlotPanel extends javax.swing.JPanel {
         int duration = getDurationMillis();
         if (isStarted() && (duration > 0)) {
             for (SeriesInfo s : series) {
-                s.timeSeries.setMaximumItemAge(duration + 10000); //Can connect to last removed point, but only up to 10s 
+                s.buffer.setMaximumItemAge(duration + 10000); //Can connect to last removed point, but only up to 10s 
             }
         } else {
             //Preserve points if paused
             for (SeriesInfo s : series) {
-                s.timeSeries.setMaximumItemAge(Long.MAX_VALUE);
+                s.buffer.setMaximumItemAge(Long.MAX_VALUE);
             }
         }
         */
     }
 
     public void setAxisAutoScale(int index) {
-        ValueAxis axis = chart.getXYPlot().getRangeAxis(index);
-        if (axis!=null){
-            axis.setAutoRange(true);
+        synchronized (renderLock) {
+            ValueAxis axis = chart.getXYPlot().getRangeAxis(index);
+            if (axis!=null){
+                axis.setAutoRange(true);
+            }
         }
     }
 
@@ -1030,9 +1677,11 @@ public class PlotPanel extends javax.swing.JPanel {
     }
 
     public void setAxisScale(int index, Range range) {
-        ValueAxis axis = chart.getXYPlot().getRangeAxis(index);
-        if (axis!=null){
-            axis.setRangeWithMargins(range, true, true);
+        synchronized (renderLock) {
+            ValueAxis axis = chart.getXYPlot().getRangeAxis(index);
+            if (axis!=null){
+                axis.setRangeWithMargins(range, true, true);
+            }
         }
     }
     
@@ -1047,9 +1696,11 @@ public class PlotPanel extends javax.swing.JPanel {
     }    
     
     public void setTimeAxisLabel(String label) {
-        final XYPlot plot = chart.getXYPlot();
-        ValueAxis axis = plot.getDomainAxis();
-        axis.setLabel(label);
+        synchronized (renderLock) {
+            final XYPlot plot = chart.getXYPlot();
+            ValueAxis axis = plot.getDomainAxis();
+            axis.setLabel(label);
+        }
     }
 
     public String getTimeAxisLabel() {
@@ -1068,8 +1719,10 @@ public class PlotPanel extends javax.swing.JPanel {
     }
 
     protected void setSeriesColor(PlotSeries plotSeries, Color color) {
-        XYLineAndShapeRenderer renderer = getSeriesInfo(plotSeries).getRenderer();
-        renderer.setSeriesPaint(0, color);
+        synchronized (renderLock) {
+            XYLineAndShapeRenderer renderer = getSeriesInfo(plotSeries).getRenderer();
+            renderer.setSeriesPaint(0, color);
+        }
     }
 
     public Range getXAxisRange() {
@@ -1082,20 +1735,13 @@ public class PlotPanel extends javax.swing.JPanel {
         return new Range(r.getLowerBound(), r.getUpperBound());
     }
 
-    TimeSeries getTimeSeries(PlotSeries plotSeries) {
-        for (SeriesInfo s : series) {
-            if (s.plotSeries == plotSeries) {
-                return s.timeSeries;
-            }
-        }
-        return null;
-    }
-
     public BufferedImage getSnapshot(Dimension size) {
         if (size == null) {
             size = new Dimension(PREFERRED_WIDTH, PREFERRED_HEIGHT);
         }
-        return chart.createBufferedImage(size.width, size.height);
+        synchronized (renderLock) {
+            return chart.createBufferedImage(size.width, size.height);
+        }
     }
 
     public JFreeChart getChart() {
@@ -1130,6 +1776,7 @@ public class PlotPanel extends javax.swing.JPanel {
     public void close() {
         if (closed == false) {
             closed = true;
+            setBackgroundRendering(false);
             clear();
         }
     }
@@ -1165,8 +1812,24 @@ public class PlotPanel extends javax.swing.JPanel {
     }
 
     public void add(int index, long time, double value) {
+        add(index, time, 0, value);
+    }
+
+    /**
+     * time: epoch in ms, nanosOffset: sub-millisecond part in ns
+     */
+    public void add(int index, long time, long nanosOffset, double value) {
         if (isStarted()) {
-            addDataPoint(index, time, value);
+            addDataPoint(index, toNanos(time, nanosOffset), value);
+        }
+    }
+
+    /**
+     * Appends to a series through its handle, without lookups.
+     */
+    void add(SeriesInfo info, long time, long nanosOffset, double value) {
+        if (isStarted() && (info != null)) {
+            info.data.append(toNanos(time, nanosOffset), value);
         }
     }
 
@@ -1175,6 +1838,13 @@ public class PlotPanel extends javax.swing.JPanel {
     }
 
     public void add(long time, double[] values) {
+        add(time, 0, values);
+    }
+
+    /**
+     * time: epoch in ms, nanosOffset: sub-millisecond part in ns
+     */
+    public void add(long time, long nanosOffset, double[] values) {
         if (isStarted()) {
             if ((values != null) && (getNumberOfSeries() == values.length)) {
                 if (scrollMode){
@@ -1185,9 +1855,18 @@ public class PlotPanel extends javax.swing.JPanel {
                         }
                     }
                 }
-                for (int i = 0; i < values.length; i++) {
-                    addDataPoint(i, time, values[i]);
-                }               
+                SampleBuffer shared = getSharedBuffer();
+                if (shared != null) {
+                    if (shared.append(toNanos(time, nanosOffset), values)) {
+                        for (SeriesInfo s : series) {
+                            s.data.onAppended();
+                        }
+                    }
+                } else {
+                    for (int i = 0; i < values.length; i++) {
+                        addDataPoint(i, toNanos(time, nanosOffset), values[i]);
+                    }
+                }
             }
         }
     }
@@ -1210,41 +1889,65 @@ public class PlotPanel extends javax.swing.JPanel {
     //Configuration
     public void setMarkersVisible(boolean visible) {
         markersVisible = visible;
-        for (int i = 0; i < getNumberOfSeries(); i++) {
-            getRenderer(i).setBaseShapesVisible(visible);
+        synchronized (renderLock) {
+            for (int i = 0; i < getNumberOfSeries(); i++) {
+                getRenderer(i).setBaseShapesVisible(visible);
+            }
+            updateTooltips();
         }
-        updateTooltips();
         if (isShowing()) {
             repaint();
         }
     }
     
     void updateTooltips(){
-        boolean tooltips = markersVisible && !scrollMode;
-        for (int i = 0; i < getNumberOfSeries(); i++) {
-            if (tooltips){
-                DecimalFormat vf = new DecimalFormat("0.##########");
-                SimpleDateFormat tf = new SimpleDateFormat("HH:mm:ss.S");
-                getRenderer(i).setBaseToolTipGenerator(new StandardXYToolTipGenerator("{0} {1} {2}", tf, vf));
-                chartPanel.setDisplayToolTips(true);
-                chartPanel.getChartRenderingInfo().setEntityCollection(new StandardEntityCollection());
-            } else {
-                chartPanel.getChartRenderingInfo().setEntityCollection(null);
-                chartPanel.setDisplayToolTips(false);
-                getRenderer(i).setBaseToolTipGenerator(null);
+        synchronized (renderLock) {
+            boolean tooltips = markersVisible && !scrollMode;
+            for (int i = 0; i < getNumberOfSeries(); i++) {
+                if (tooltips){
+                    DecimalFormat vf = new DecimalFormat("0.##########");
+                    SimpleDateFormat tf = new SimpleDateFormat("HH:mm:ss.S");
+                    getRenderer(i).setBaseToolTipGenerator(new StandardXYToolTipGenerator("{0} {1} {2}", tf, vf));
+                    chartPanel.setDisplayToolTips(true);
+                    chartPanel.getChartRenderingInfo().setEntityCollection(new StandardEntityCollection());
+                } else {
+                    chartPanel.getChartRenderingInfo().setEntityCollection(null);
+                    chartPanel.setDisplayToolTips(false);
+                    getRenderer(i).setBaseToolTipGenerator(null);
+                }
             }
         }
-        
     }  
 
     public boolean isMarkersVisible() {
         return markersVisible;
     }
 
+    /**
+     * Sets the decimation bucket to the largest power of two ns not wider than
+     * a pixel. Disabled if markers are visible, as every sample is drawn.
+     */
+    void updateDecimation() {
+        long width = 0;
+        if (!isMarkersVisible()) {
+            Rectangle2D area = chartPanel.getChartRenderingInfo().getPlotInfo().getDataArea();
+            double pixels = ((area == null) || (area.getWidth() <= 0)) ? chartPanel.getWidth() : area.getWidth();
+            double nsPerPixel = chart.getXYPlot().getDomainAxis().getRange().getLength() * 1e6 / Math.max(pixels, 1);
+            if (nsPerPixel >= 2) {
+                width = Long.highestOneBit((long) nsPerPixel);
+            }
+        }
+        for (SeriesInfo s : series) {
+            s.data.setDecimation(width);
+        }
+    }
+
     public void setLegendVisible(boolean visible) {
         legendVisible = visible;
-        if (chart.getLegend() != null) {
-            chart.getLegend().setVisible(visible);
+        synchronized (renderLock) {
+            if (chart.getLegend() != null) {
+                chart.getLegend().setVisible(visible);
+            }
         }
         if (isShowing()) {
             repaint();
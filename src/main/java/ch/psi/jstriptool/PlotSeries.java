@@ -23,6 +23,7 @@ public final class PlotSeries {
 
     int precision;
     boolean logarithmic;
+    SeriesInfo info; //Handle to the plot storage, set while added to a plot
 
     public PlotSeries(String name) {
         setName((name == null) ? "" : name);
@@ -84,7 +85,7 @@ public final class PlotSeries {
     }
 
     public int getIndex() {
-        SeriesInfo info = getPlot().getSeriesInfo(this);
+        SeriesInfo info = this.info;
         if (info == null) {
             return -1;
         }
@@ -96,11 +97,18 @@ public final class PlotSeries {
     }
 
     public void appendData(double value) {
-        getPlot().add(getIndex(), value);
+        appendData(System.currentTimeMillis(), value);
     }
 
     public void appendData(long time, double value) {
-        getPlot().add(getIndex(), time, value);
+        appendData(time, 0, value);
+    }
+
+    public void appendData(long time, long nanosOffset, double value) {
+        SeriesInfo info = this.info;
+        if (info != null) {
+            info.getPanel().add(info, time, nanosOffset, value);
+        }
     }
 
     public double getRangeMin() {
@@ -0,0 +1,188 @@
+package ch.psi.jstriptool;
+
+/**
+ * Multi-resolution aggregates of a SampleBuffer column: level k holds, for
+ * every aligned block of 2^k rows, the rows of the minimum and maximum and
+ * the number of NaN values. Range queries combine the largest
+ * complete blocks, so their cost is logarithmic in the number of rows.
+ * Each level is a ring of blocks sized from the rows held, growing with the
+ * buffer. The last row, which the buffer may update in place, is not
+ * aggregated: queries read it directly.
+ */
+public class Pyramid {
+
+    static final int MIN_LEVEL = 4; //Smaller blocks are scanned
+
+    final SampleBuffer buffer;
+    final SampleBuffer.Column column;
+
+    int levels;
+    long[][] minSeq;
+    long[][] maxSeq;
+    int[][] nans;
+
+    int capacity;
+    long processed; //Sequence of the next row to be aggregated
+    long start; //First row aggregated since reset
+
+    //Result of the last query
+    long min;
+    long max;
+    int nanCount;
+
+    public Pyramid(SampleBuffer buffer, SampleBuffer.Column column) {
+        this.buffer = buffer;
+        this.column = column;
+        capacity = -1;
+    }
+
+    void reset() {
+        //Blocks are not larger than the buffer, so that the rows of a block
+        //being aggregated are retained
+        capacity = buffer.getCapacity();
+        levels = 0;
+        while ((MIN_LEVEL + levels < 31) && ((1 << (MIN_LEVEL + levels)) <= capacity)) {
+            levels++;
+        }
+        minSeq = new long[levels][];
+        maxSeq = new long[levels][];
+        nans = new int[levels][];
+        for (int i = 0; i < levels; i++) {
+            int length = (buffer.size() >> (MIN_LEVEL + i)) + 2;
+            minSeq[i] = new long[length];
+            maxSeq[i] = new long[length];
+            nans[i] = new int[length];
+        }
+        processed = start = buffer.getFirstSequence();
+    }
+
+    /**
+     * Aggregates the rows appended since the last call, except the last one.
+     */
+    public void update() {
+        long firstSequence = buffer.getFirstSequence();
+        if ((capacity != buffer.getCapacity()) || (processed < firstSequence)) {
+            reset();
+        }
+        long sequence = buffer.getSequence() - 1;
+        for (long seq = processed; seq < sequence; seq++) {
+            add(seq, buffer.getValue(column, (int) (seq - firstSequence)), firstSequence);
+        }
+        processed = Math.max(processed, sequence);
+    }
+
+    void add(long seq, double value, long firstSequence) {
+        long oldest = Math.max(start, firstSequence);
+        for (int i = 0; i < levels; i++) {
+            int level = MIN_LEVEL + i;
+            long block = seq >> level;
+            if (block - (oldest >> level) >= minSeq[i].length) {
+                grow(i, oldest >> level, block);
+            }
+            int slot = (int) (block % minSeq[i].length);
+            if (((seq & ((1L << level) - 1)) == 0) || (seq == start)) {
+                minSeq[i][slot] = -1;
+                maxSeq[i][slot] = -1;
+                nans[i][slot] = 0;
+            }
+            if (Double.isNaN(value)) {
+                nans[i][slot]++;
+            } else {
+                //Rows dropped from a block are ignored: it is not queried anymore
+                if ((minSeq[i][slot] < firstSequence) || (value < getValue(minSeq[i][slot]))) {
+                    minSeq[i][slot] = seq;
+                }
+                if ((maxSeq[i][slot] < firstSequence) || (value > getValue(maxSeq[i][slot]))) {
+                    maxSeq[i][slot] = seq;
+                }
+            }
+        }
+    }
+
+    /**
+     * Enlarges the ring of a level to hold the blocks from first to last,
+     * keeping the ones before last.
+     */
+    void grow(int i, long first, long last) {
+        int length = minSeq[i].length;
+        int size = (int) Math.max(2L * length, last - first + 2);
+        long[] mn = new long[size];
+        long[] mx = new long[size];
+        int[] nn = new int[size];
+        for (long block = Math.max(first, last - length); block < last; block++) {
+            int from = (int) (block % length);
+            int to = (int) (block % size);
+            mn[to] = minSeq[i][from];
+            mx[to] = maxSeq[i][from];
+            nn[to] = nans[i][from];
+        }
+        minSeq[i] = mn;
+        maxSeq[i] = mx;
+        nans[i] = nn;
+    }
+
+    double getValue(long seq) {
+        return buffer.getValue(column, (int) (seq - buffer.getFirstSequence()));
+    }
+
+    /**
+     * Aggregates the rows with sequence in [from, to), which must have been
+     * appended before the last update. The result is read with getMin, getMax
+     * and getNanCount.
+     */
+    public void query(long from, long to) {
+        min = -1;
+        max = -1;
+        nanCount = 0;
+        long seq = from;
+        long limit = Math.min(to, processed); //Blocks fully aggregated
+        while (seq < to) {
+            int i = levels - 1;
+            while ((i >= 0) && (((seq & ((1L << (MIN_LEVEL + i)) - 1)) != 0) || (seq + (1L << (MIN_LEVEL + i)) > limit))) {
+                i--;
+            }
+            if (i < 0) {
+                double value = getValue(seq);
+                if (Double.isNaN(value)) {
+                    nanCount++;
+                } else {
+                    combine(seq, seq);
+                }
+                seq++;
+            } else {
+                int level = MIN_LEVEL + i;
+                int slot = (int) ((seq >> level) % minSeq[i].length);
+                int size = 1 << level;
+                nanCount += nans[i][slot];
+                if (nans[i][slot] < size) {
+                    combine(minSeq[i][slot], maxSeq[i][slot]);
+                }
+                seq += size;
+            }
+        }
+    }
+
+    void combine(long minSeq, long maxSeq) {
+        if ((min < 0) || (getValue(minSeq) < getValue(min))) {
+            min = minSeq;
+        }
+        if ((max < 0) || (getValue(maxSeq) > getValue(max))) {
+            max = maxSeq;
+        }
+    }
+
+    /**
+     * Sequence of the minimum of the last query, -1 if all values were NaN.
+     */
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public int getNanCount() {
+        return nanCount;
+    }
+}
@@ -0,0 +1,117 @@
+package ch.psi.jstriptool;
+
+/**
+ * Running minimum and maximum of a SampleBuffer column over the retained rows.
+ * Monotonic deques of row sequences are updated with the appended rows and
+ * trimmed of the rows dropped by the buffer, in amortized O(1) per row. NaN
+ * values are ignored. The last row, which the buffer may update in place, is
+ * not added to the deques but read when the range is requested.
+ */
+public class RangeTracker {
+
+    /**
+     * Ring of row sequences.
+     */
+    static class Deque {
+
+        long[] data = new long[64];
+        int head;
+        int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long first() {
+            return data[head];
+        }
+
+        long last() {
+            return data[(head + size - 1) % data.length];
+        }
+
+        void removeFirst() {
+            head = (head + 1) % data.length;
+            size--;
+        }
+
+        void removeLast() {
+            size--;
+        }
+
+        void addLast(long seq) {
+            if (size == data.length) {
+                long[] d = new long[data.length * 2];
+                for (int i = 0; i < size; i++) {
+                    d[i] = data[(head + i) % data.length];
+                }
+                data = d;
+                head = 0;
+            }
+            data[(head + size) % data.length] = seq;
+            size++;
+        }
+    }
+
+    final SampleBuffer buffer;
+    final SampleBuffer.Column column;
+    final Deque min = new Deque(); //Increasing values
+    final Deque max = new Deque(); //Decreasing values
+    long processed; //Sequence of the next row to be processed
+
+    public RangeTracker(SampleBuffer buffer, SampleBuffer.Column column) {
+        this.buffer = buffer;
+        this.column = column;
+    }
+
+    /**
+     * Processes the rows appended and dropped since the last call.
+     */
+    public void update() {
+        long firstSequence = buffer.getFirstSequence();
+        long sequence = buffer.getSequence() - 1;
+        while (!min.isEmpty() && (min.first() < firstSequence)) {
+            min.removeFirst();
+        }
+        while (!max.isEmpty() && (max.first() < firstSequence)) {
+            max.removeFirst();
+        }
+        for (long seq = Math.max(processed, firstSequence); seq < sequence; seq++) {
+            double value = getValue(seq);
+            if (!Double.isNaN(value)) {
+                while (!min.isEmpty() && (getValue(min.last()) >= value)) {
+                    min.removeLast();
+                }
+                min.addLast(seq);
+                while (!max.isEmpty() && (getValue(max.last()) <= value)) {
+                    max.removeLast();
+                }
+                max.addLast(seq);
+            }
+        }
+        processed = Math.max(processed, sequence);
+    }
+
+    double getValue(long seq) {
+        return buffer.getValue(column, (int) (seq - buffer.getFirstSequence()));
+    }
+
+    /**
+     * Minimum of the retained rows, or NaN if none.
+     */
+    public double getMin() {
+        double last = getLast();
+        double ret = min.isEmpty() ? Double.NaN : getValue(min.first());
+        return (Double.isNaN(ret) || (last < ret)) ? last : ret;
+    }
+
+    public double getMax() {
+        double last = getLast();
+        double ret = max.isEmpty() ? Double.NaN : getValue(max.first());
+        return (Double.isNaN(ret) || (last > ret)) ? last : ret;
+    }
+
+    double getLast() {
+        return (buffer.size() == 0) ? Double.NaN : buffer.getValue(column, buffer.size() - 1);
+    }
+}
@@ -0,0 +1,429 @@
+package ch.psi.jstriptool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the acquired samples to rolling segment files in the DataFile
+ * format. Rows are collected from the sampling threads and monitor callbacks,
+ * without I/O, and written by a dedicated thread that commits them together every
+ * COMMIT_INTERVAL: one chunk per group and a single force to disk. A new
+ * segment is started when the series change or the current one exceeds the
+ * size or duration limit. Segments older than the retention time are
+ * deleted.
+ */
+public class Recorder implements AutoCloseable {
+
+    static final Logger logger = Logger.getLogger(Recorder.class.getName());
+
+    static final String PREFIX = "jstriptool_";
+    static final long COMMIT_INTERVAL = 1000; //ms
+    static final long MAX_PENDING_BYTES = 64 * 1024 * 1024L; //All groups: rows beyond are dropped if the disk does not keep up
+    static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS'Z'"); //UTC: sorts in time order
+
+    /**
+     * Rows of a group, with growable primitive columns.
+     */
+    static class Rows {
+
+        long[] times;
+        final double[][] columns;
+        int size;
+
+        Rows(int width) {
+            times = new long[64];
+            columns = new double[width][64];
+        }
+
+        long getBytes() {
+            return (long) times.length * Long.BYTES * (columns.length + 1);
+        }
+
+        /**
+         * Makes room for a row, growing by at most available bytes. Returns
+         * the bytes allocated, or -1 if the room would exceed them.
+         */
+        long reserve(long available) {
+            if (size == times.length) {
+                long bytes = getBytes();
+                if (bytes > available) {
+                    return -1;
+                }
+                times = Arrays.copyOf(times, size * 2);
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = Arrays.copyOf(columns[i], size * 2);
+                }
+                return bytes;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Rows collected for one series layout.
+     */
+    static class Batch {
+
+        final PlotSeries[] series;
+        final int[][] groups;
+        final Rows[] rows;
+
+        Batch(PlotSeries[] series, int[][] groups) {
+            this.series = series;
+            this.groups = groups;
+            rows = new Rows[groups.length];
+            for (int i = 0; i < groups.length; i++) {
+                rows[i] = new Rows(groups[i].length);
+            }
+        }
+
+        long getBytes() {
+            long ret = 0;
+            for (Rows r : rows) {
+                ret += r.getBytes();
+            }
+            return ret;
+        }
+
+        boolean isEmpty() {
+            for (Rows r : rows) {
+                if (r.size > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    final File folder;
+    final long maxSize;
+    final long maxDuration;
+    final long retention;
+    final Thread thread;
+    final Thread shutdownHook;
+    final Object lock = new Object();
+    final List<Batch> completed = new ArrayList<>();
+    Batch current;
+    boolean closed;
+    long dropped;
+    long pendingBytes; //Allocated by the batches not yet taken by the writer
+    long flushes; //Flush requests
+    long flushed; //Flush requests served by the writer
+
+    //Writer thread state
+    FileChannel channel;
+    DataFile.Writer writer;
+    Path segment;
+    PlotSeries[] segmentSeries;
+    long segmentStart;
+
+    /**
+     * maxSize in bytes, maxDuration and retention in ms. Limits lower or
+     * equal to 0 are disabled.
+     */
+    public Recorder(File folder, long maxSize, long maxDuration, long retention) {
+        this.folder = folder;
+        this.maxSize = maxSize;
+        this.maxDuration = maxDuration;
+        this.retention = retention;
+        thread = new Thread(() -> {
+            run();
+        }, "Recorder");
+        thread.setDaemon(true);
+        thread.start();
+        shutdownHook = new Thread(() -> {
+            close();
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    public File getFolder() {
+        return folder;
+    }
+
+    /**
+     * Sets the recorded series, copies as stored in the segment headers, or
+     * null to pause. If shared all series are in one group, recorded with
+     * record(long, double[]), otherwise each series is a group.
+     */
+    public void setSeries(PlotSeries[] series, boolean shared) {
+        Batch batch = null;
+        if ((series != null) && (series.length > 0)) {
+            int[][] groups;
+            if (shared) {
+                groups = new int[1][series.length];
+                for (int i = 0; i < series.length; i++) {
+                    groups[0][i] = i;
+                }
+            } else {
+                groups = new int[series.length][];
+                for (int i = 0; i < series.length; i++) {
+                    groups[i] = new int[]{i};
+                }
+            }
+            batch = new Batch(series, groups);
+        }
+        synchronized (lock) {
+            if ((current != null) && !current.isEmpty()) {
+                completed.add(current);
+            }
+            current = batch;
+            if (batch != null) {
+                pendingBytes += batch.getBytes();
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Records a row of all series, in a shared layout. Time in epoch ns.
+     */
+    public void record(long time, double[] values) {
+        record(time, values, values.length);
+    }
+
+    /**
+     * Records a row of all series from the first count values of the array.
+     */
+    public void record(long time, double[] values, int count) {
+        synchronized (lock) {
+            Batch batch = current;
+            if ((batch == null) || (batch.rows.length != 1) || (batch.rows[0].columns.length != count)) {
+                return;
+            }
+            Rows rows = batch.rows[0];
+            if (!reserve(rows)) {
+                return;
+            }
+            rows.times[rows.size] = time;
+            for (int i = 0; i < count; i++) {
+                rows.columns[i][rows.size] = values[i];
+            }
+            rows.size++;
+        }
+    }
+
+    /**
+     * Records a value of a series, in a layout with a group per series.
+     */
+    public void record(int index, long time, double value) {
+        synchronized (lock) {
+            Batch batch = current;
+            if ((batch == null) || (index < 0) || (index >= batch.rows.length) || (batch.rows[index].columns.length != 1)) {
+                return;
+            }
+            Rows rows = batch.rows[index];
+            if (!reserve(rows)) {
+                return;
+            }
+            rows.times[rows.size] = time;
+            rows.columns[0][rows.size] = value;
+            rows.size++;
+        }
+    }
+
+    boolean reserve(Rows rows) {
+        long bytes = rows.reserve(MAX_PENDING_BYTES - pendingBytes);
+        if (bytes < 0) {
+            dropped++;
+            return false;
+        }
+        pendingBytes += bytes;
+        return true;
+    }
+
+    /**
+     * Waits until the rows recorded so far are committed, at most
+     * 10 * COMMIT_INTERVAL.
+     */
+    public void flush() {
+        long deadline = System.currentTimeMillis() + 10 * COMMIT_INTERVAL;
+        synchronized (lock) {
+            long request = ++flushes;
+            lock.notifyAll();
+            long wait;
+            while ((flushed < request) && !closed && ((wait = deadline - System.currentTimeMillis()) > 0)) {
+                try {
+                    lock.wait(wait);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    void run() {
+        while (true) {
+            List<Batch> batches = new ArrayList<>();
+            boolean paused;
+            boolean finished;
+            long request;
+            synchronized (lock) {
+                if (!closed && (flushed == flushes)) {
+                    try {
+                        lock.wait(COMMIT_INTERVAL);
+                    } catch (InterruptedException ex) {
+                        closed = true;
+                    }
+                }
+                batches.addAll(completed);
+                completed.clear();
+                if ((current != null) && !current.isEmpty()) {
+                    batches.add(current);
+                    current = new Batch(current.series, current.groups);
+                }
+                pendingBytes = (current == null) ? 0 : current.getBytes();
+                paused = (current == null);
+                finished = closed;
+                request = flushes;
+            }
+            commit(batches);
+            if (paused || finished) {
+                closeSegment();
+            }
+            synchronized (lock) {
+                flushed = request;
+                lock.notifyAll();
+            }
+            if (finished) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the batches and forces them to disk once.
+     */
+    void commit(List<Batch> batches) {
+        for (Batch batch : batches) {
+            try {
+                if ((writer == null) || (batch.series != segmentSeries) || isRotationDue()) {
+                    openSegment(batch);
+                }
+                for (int i = 0; i < batch.rows.length; i++) {
+                    Rows rows = batch.rows[i];
+                    if (rows.size > 0) {
+                        writer.write(i, rows.times, rows.columns, 0, rows.size);
+                    }
+                }
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Cannot record to: " + segment, ex);
+                closeSegment();
+            }
+        }
+        if (writer != null) {
+            try {
+                writer.force();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Cannot record to: " + segment, ex);
+                closeSegment();
+            }
+        }
+    }
+
+    boolean isRotationDue() {
+        return ((maxSize > 0) && (writer.getSize() >= maxSize))
+                || ((maxDuration > 0) && (System.currentTimeMillis() - segmentStart >= maxDuration));
+    }
+
+    void openSegment(Batch batch) throws IOException {
+        closeSegment();
+        folder.mkdirs();
+        String name = PREFIX + LocalDateTime.now(ZoneOffset.UTC).format(NAME_FORMAT);
+        Path path = folder.toPath().resolve(name + "." + DataFile.EXTENSION);
+        for (int i = 1; path.toFile().exists(); i++) {
+            path = folder.toPath().resolve(name + "_" + i + "." + DataFile.EXTENSION);
+        }
+        segment = path;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        writer = new DataFile.Writer(channel);
+        writer.writeHeader(batch.series, batch.groups);
+        segmentSeries = batch.series;
+        segmentStart = System.currentTimeMillis();
+        logger.fine("Recording to: " + path);
+        deleteExpired();
+    }
+
+    void closeSegment() {
+        if (channel != null) {
+            try {
+                writer.force();
+                channel.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Cannot close: " + segment, ex);
+            }
+        }
+        channel = null;
+        writer = null;
+        segmentSeries = null;
+    }
+
+    /**
+     * Deletes the segments not modified within the retention time.
+     */
+    void deleteExpired() {
+        if (retention <= 0) {
+            return;
+        }
+        long limit = System.currentTimeMillis() - retention;
+        File[] files = folder.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith("." + DataFile.EXTENSION));
+        if (files != null) {
+            for (File file : files) {
+                if (!file.toPath().equals(segment) && (file.lastModified() < limit)) {
+                    if (file.delete()) {
+                        logger.fine("Deleted expired segment: " + file);
+                    }
+                }
+            }
+        }
+    }
+
+    public Path getSegment() {
+        return segment;
+    }
+
+    public long getDropped() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Recording to: " + segment + " dropped rows: " + getDropped();
+    }
+
+    /**
+     * Commits the pending rows and closes the segment.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            thread.join(10 * COMMIT_INTERVAL);
+        } catch (InterruptedException ex) {
+        }
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ex) {
+                //Shutting down
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package ch.psi.jstriptool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plays back a data file as rows of all curves, with the recorded times.
+ * Rows are paced by the speed factor, or produced as fast as consumed if the
+ * speed is 0. Chunks are decoded from the mapped file as reached, one per
+ * group: curves recorded in separate groups are merged in time order, each
+ * holding its last value.
+ */
+public class Replay implements AutoCloseable {
+
+    static final Logger logger = Logger.getLogger(Replay.class.getName());
+
+    /**
+     * Receives the played rows, returning false if a row was not taken. The
+     * values array is only valid during the call.
+     */
+    public interface Consumer {
+
+        boolean accept(long time, double[] values);
+    }
+
+    /**
+     * Position in the chunks of a group.
+     */
+    static class Cursor {
+
+        final DataFile file;
+        final int[] curves;
+        final List<DataFile.Chunk> chunks = new ArrayList<>();
+        final long[] times = new long[DataFile.CHUNK_ROWS];
+        final double[][] columns;
+        int chunk = -1;
+        int rows;
+        int index;
+
+        Cursor(DataFile file, int group) {
+            this.file = file;
+            curves = file.getGroup(group);
+            for (DataFile.Chunk c : file.getChunks()) {
+                if (c.group == group) {
+                    chunks.add(c);
+                }
+            }
+            columns = new double[curves.length][DataFile.CHUNK_ROWS];
+        }
+
+        void load(int index) {
+            chunk = index;
+            rows = 0;
+            this.index = 0;
+            if (index < chunks.size()) {
+                DataFile.Chunk c = chunks.get(index);
+                file.readTimes(c, times, 0);
+                for (int i = 0; i < curves.length; i++) {
+                    file.readValues(c, i, columns[i], 0);
+                }
+                rows = c.rows;
+            }
+        }
+
+        /**
+         * Time of the current row, or Long.MAX_VALUE at the end.
+         */
+        long peek() {
+            return (index < rows) ? times[index] : Long.MAX_VALUE;
+        }
+
+        void advance() {
+            if (++index >= rows) {
+                load(chunk + 1);
+            }
+        }
+
+        /**
+         * Moves to the first row not older than time, setting in values the
+         * curves of the previous row, which may be in the previous chunk.
+         */
+        void seek(long time, double[] values) {
+            int i = 0;
+            while ((i < chunks.size()) && (chunks.get(i).lastTime < time)) {
+                i++;
+            }
+            load(i);
+            while ((index < rows) && (times[index] < time)) {
+                index++;
+            }
+            DataFile.Chunk previous = (i > 0) ? chunks.get(i - 1) : null;
+            for (int j = 0; j < curves.length; j++) {
+                if (index > 0) {
+                    values[curves[j]] = columns[j][index - 1];
+                } else {
+                    values[curves[j]] = (previous == null) ? Double.NaN : file.readValue(previous, j, previous.rows - 1);
+                }
+            }
+        }
+
+        void copy(double[] values) {
+            for (int j = 0; j < curves.length; j++) {
+                values[curves[j]] = columns[j][index];
+            }
+        }
+    }
+
+    final DataFile file;
+    final Consumer consumer;
+    final Runnable onSeek;
+    final Cursor[] cursors;
+    final double[] values;
+    final long firstTime;
+    final long lastTime;
+    final Thread thread;
+    double speed;
+    boolean paused;
+    boolean closed;
+    boolean finished; //Set by the replay thread, cursors are only accessed by it
+    Long seekTime;
+    long position; //Time of the last row played
+    long dropped; //Rows not taken by the consumer
+    long anchorNanos; //Pacing: wall clock and data times of the last change
+    long anchorTime;
+
+    /**
+     * Rows are passed to the consumer in the replay thread. onSeek is called
+     * in the same thread before the position is moved.
+     */
+    public Replay(DataFile file, double speed, Consumer consumer, Runnable onSeek) {
+        this.file = file;
+        this.speed = Math.max(speed, 0);
+        this.consumer = consumer;
+        this.onSeek = onSeek;
+        cursors = new Cursor[file.getGroupCount()];
+        for (int i = 0; i < cursors.length; i++) {
+            cursors[i] = new Cursor(file, i);
+        }
+        values = new double[file.getSeries().length];
+        Arrays.fill(values, Double.NaN);
+        Long first = file.getFirstTime();
+        firstTime = (first == null) ? 0 : first;
+        lastTime = (first == null) ? 0 : file.getLastTime();
+        position = firstTime;
+        thread = new Thread(() -> {
+            run();
+        }, "Replay");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        for (Cursor cursor : cursors) {
+            cursor.load(0);
+        }
+        finished = isAtEnd();
+        anchor(firstTime);
+        thread.start();
+    }
+
+    public DataFile getFile() {
+        return file;
+    }
+
+    void anchor(long time) {
+        anchorNanos = System.nanoTime();
+        anchorTime = time;
+    }
+
+    public synchronized double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Factor of the recorded rate, or 0 for the maximum speed.
+     */
+    public synchronized void setSpeed(double value) {
+        speed = Math.max(value, 0);
+        anchor(position);
+        notifyAll();
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    public synchronized void setPaused(boolean value) {
+        paused = value;
+        anchor(position);
+        notifyAll();
+    }
+
+    /**
+     * Moves to the time in seconds from the beginning of the file.
+     */
+    public synchronized void seek(double seconds) {
+        seekTime = firstTime + (long) (seconds * 1e9);
+        notifyAll();
+    }
+
+    public synchronized double getPosition() {
+        return (position - firstTime) / 1e9;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public double getDuration() {
+        return (lastTime - firstTime) / 1e9;
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    boolean isAtEnd() {
+        for (Cursor cursor : cursors) {
+            if (cursor.peek() != Long.MAX_VALUE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void run() {
+        try {
+            while (true) {
+                Long seek;
+                synchronized (this) {
+                    while (!closed && (seekTime == null) && (paused || finished)) {
+                        wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    seek = seekTime;
+                    seekTime = null;
+                }
+                if (seek != null) {
+                    onSeek.run();
+                    synchronized (this) {
+                        for (Cursor cursor : cursors) {
+                            cursor.seek(seek, values);
+                        }
+                        position = Math.max(seek, firstTime);
+                        finished = isAtEnd();
+                        anchor(position);
+                    }
+                    continue;
+                }
+                Cursor next = cursors[0];
+                for (Cursor cursor : cursors) {
+                    if (cursor.peek() < next.peek()) {
+                        next = cursor;
+                    }
+                }
+                long time = next.peek();
+                if (!waitFor(time)) {
+                    continue;
+                }
+                next.copy(values);
+                boolean taken = consumer.accept(time, values);
+                next.advance();
+                synchronized (this) {
+                    position = time;
+                    finished = isAtEnd();
+                    if (!taken) {
+                        dropped++;
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, null, ex);
+        }
+    }
+
+    /**
+     * Waits until the row time is due. Returns false if the state changed
+     * meanwhile.
+     */
+    synchronized boolean waitFor(long time) throws InterruptedException {
+        while (!closed && !paused && (seekTime == null)) {
+            if (speed <= 0) {
+                return true;
+            }
+            long wait = anchorNanos + (long) ((time - anchorTime) / speed) - System.nanoTime();
+            if (wait <= 0) {
+                return true;
+            }
+            wait(wait / 1000000L, (int) (wait % 1000000L));
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Replay: %s position: %.3fs of %.3fs speed: %s%s dropped rows: %d", file.getPath(), getPosition(), getDuration(),
+                (getSpeed() <= 0) ? "max" : String.valueOf(getSpeed()), isPaused() ? " paused" : (isFinished() ? " finished" : ""), getDropped());
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+}
@@ -0,0 +1,310 @@
+package ch.psi.jstriptool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Circular columnar buffer of timestamped samples backed by primitive arrays:
+ * one time column shared by any number of value columns. Once the buffer
+ * reaches its capacity appending overwrites the oldest row, so it is O(1) and
+ * allocation-free. Times are epoch nanoseconds. The capacity is a property
+ * of the buffer: columns sharing the time column hold the same rows.
+ */
+public class SampleBuffer {
+
+    static final int INITIAL_LENGTH = 1024;
+
+    /**
+     * Value column. Rows are addressed through the owning buffer.
+     */
+    public static class Column {
+
+        double[] values;
+
+        Column(int length) {
+            values = new double[length];
+        }
+    }
+
+    long[] times;
+    final List<Column> columns = new ArrayList<>();
+    int head; //Physical index of the oldest sample
+    int size;
+    int capacity;
+    long count; //Number of rows ever appended: sequence of the next row
+    long updates; //Number of in-place updates of the last row
+
+    public SampleBuffer(int capacity) {
+        times = new long[0];
+        setCapacity(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Sequence number of the oldest row. Sequence numbers identify rows
+     * independently of the position in the ring.
+     */
+    public long getFirstSequence() {
+        return count - size;
+    }
+
+    /**
+     * Sequence number of the next row to be appended.
+     */
+    public long getSequence() {
+        return count;
+    }
+
+    public long getUpdates() {
+        return updates;
+    }
+
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    public Column getColumn(int index) {
+        return columns.get(index);
+    }
+
+    /**
+     * Adds a value column, filled with NaN for the existing rows.
+     */
+    public Column addColumn() {
+        Column column = new Column(times.length);
+        Arrays.fill(column.values, Double.NaN);
+        columns.add(column);
+        return column;
+    }
+
+    public void removeColumn(Column column) {
+        columns.remove(column);
+    }
+
+    /**
+     * Moves a column to another index: the position of its values in the
+     * rows appended with append(long, double[]).
+     */
+    public void moveColumn(Column column, int index) {
+        if (columns.remove(column)) {
+            columns.add(index, column);
+        }
+    }
+
+    /**
+     * Sets the maximum number of rows retained, dropping the oldest ones if
+     * needed. Arrays grow on demand up to the capacity.
+     */
+    public void setCapacity(int capacity) {
+        capacity = Math.max(capacity, 1);
+        if (size > capacity) {
+            head = physical(size - capacity);
+            size = capacity;
+        }
+        this.capacity = capacity;
+        int length = Math.min(capacity, Math.max(size, INITIAL_LENGTH));
+        if (length != times.length) {
+            resize(length);
+        }
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Appends a row to a single column buffer.
+     */
+    public boolean append(long time, double value) {
+        return append(time, columns.get(0), value);
+    }
+
+    /**
+     * Appends a value to one column. If time is equal to the last timestamp
+     * the last value of the column is updated, otherwise the other columns
+     * repeat their last value in the new row.
+     */
+    public boolean append(long time, Column column, double value) {
+        int index = appendRow(time);
+        if (index < 0) {
+            return false;
+        }
+        if (index != Integer.MAX_VALUE) {
+            int previous = (size > 1) ? physical(size - 2) : -1;
+            for (Column c : columns) {
+                c.values[index] = (previous < 0) ? Double.NaN : c.values[previous];
+            }
+        } else {
+            index = physical(size - 1);
+        }
+        column.values[index] = value;
+        return true;
+    }
+
+    /**
+     * Appends a row with one value per column, in column order. If time is
+     * equal to the last timestamp the last row is updated.
+     */
+    public boolean append(long time, double[] values) {
+        int index = appendRow(time);
+        if (index < 0) {
+            return false;
+        }
+        if (index == Integer.MAX_VALUE) {
+            index = physical(size - 1);
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            columns.get(i).values[index] = (i < values.length) ? values[i] : Double.NaN;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the physical index of the new row, Integer.MAX_VALUE if time
+     * is the last timestamp, or -1 if older than that: the time axis must be
+     * monotonic.
+     */
+    int appendRow(long time) {
+        if (size > 0) {
+            long last = times[physical(size - 1)];
+            if (time == last) {
+                updates++;
+                return Integer.MAX_VALUE;
+            }
+            if (time < last) {
+                return -1;
+            }
+        }
+        int index;
+        if (size == times.length) {
+            if (size < capacity) {
+                resize((int) Math.min(capacity, 2L * size));
+            } else {
+                index = head;
+                head = (head + 1 == times.length) ? 0 : head + 1;
+                times[index] = time;
+                count++;
+                return index;
+            }
+        }
+        index = physical(size);
+        times[index] = time;
+        size++;
+        count++;
+        return index;
+    }
+
+    /**
+     * Time in ns. Index 0 is the oldest sample.
+     */
+    public long getTime(int index) {
+        return times[physical(index)];
+    }
+
+    /**
+     * Time in epoch ms, as plotted.
+     */
+    public double getMillis(int index) {
+        return toMillis(getTime(index));
+    }
+
+    static double toMillis(long nanos) {
+        return Math.floorDiv(nanos, 1000000L) + Math.floorMod(nanos, 1000000L) / 1e6;
+    }
+
+    public double getValue(int index) {
+        return getValue(columns.get(0), index);
+    }
+
+    public double getValue(Column column, int index) {
+        return column.values[physical(index)];
+    }
+
+    /**
+     * Index of the first row in [from, to) with time not lower than the
+     * argument, or to if none.
+     */
+    public int search(int from, int to, double time) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (getTime(mid) < time) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    public int search(int from, int to, long time) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (getTime(mid) < time) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Copy of the time column, oldest first.
+     */
+    public long[] copyTimes() {
+        long[] ret = new long[size];
+        int first = Math.min(size, times.length - head);
+        System.arraycopy(times, head, ret, 0, first);
+        System.arraycopy(times, 0, ret, first, size - first);
+        return ret;
+    }
+
+    /**
+     * Copy of a value column, oldest first.
+     */
+    public double[] copyValues(Column column) {
+        double[] ret = new double[size];
+        int first = Math.min(size, column.values.length - head);
+        System.arraycopy(column.values, head, ret, 0, first);
+        System.arraycopy(column.values, 0, ret, first, size - first);
+        return ret;
+    }
+
+    public Long getFirstTime() {
+        return (size == 0) ? null : getTime(0);
+    }
+
+    public Long getLastTime() {
+        return (size == 0) ? null : getTime(size - 1);
+    }
+
+    int physical(int index) {
+        int ret = head + index;
+        return (ret >= times.length) ? ret - times.length : ret;
+    }
+
+    void resize(int length) {
+        long[] t = new long[length];
+        for (int i = 0; i < size; i++) {
+            t[i] = times[physical(i)];
+        }
+        for (Column c : columns) {
+            double[] v = new double[length];
+            for (int i = 0; i < size; i++) {
+                v[i] = c.values[physical(i)];
+            }
+            c.values = v;
+        }
+        times = t;
+        head = 0;
+    }
+}
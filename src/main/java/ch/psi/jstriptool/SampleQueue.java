@@ -0,0 +1,240 @@
+package ch.psi.jstriptool;
+
+/**
+ * Bounded queue of sample rows between the samplers (monitor callbacks or the
+ * sample timer) and the plot redraw. Rows are preallocated primitive arrays
+ * reused in a ring, and the consumer drains them in batches, so that no
+ * allocation is made per sample. The behavior when the ring is full is set by
+ * the overflow policy.
+ */
+public class SampleQueue {
+
+    public enum Overflow {
+        drop,       //Drops the oldest row
+        block,      //Waits for the consumer
+        coalesce    //Replaces the newest row
+    }
+
+    /**
+     * Receives the drained rows. The values array is only valid during the
+     * call.
+     */
+    public interface Consumer {
+
+        void accept(long time, double[] values);
+    }
+
+    static final int BATCH_SIZE = 64;
+
+    final Overflow overflow;
+    final long[] times;
+    final double[][] rows;
+    final int[] widths;
+    int head;
+    int size;
+    boolean closed;
+
+    //Consumer side batch
+    final long[] batchTimes;
+    final double[][] batchRows;
+    final int[] batchWidths;
+    double[][] batchValues = new double[0][];
+
+    //Counters
+    long offered;
+    long drained;
+    long dropped;
+    long coalesced;
+    long blocked;
+    long discarded;
+    long lastTime;
+    int maxSize;
+
+    public SampleQueue(int capacity, int width, Overflow overflow) {
+        capacity = Math.max(capacity, 1);
+        this.overflow = (overflow == null) ? Overflow.drop : overflow;
+        times = new long[capacity];
+        rows = new double[capacity][width];
+        widths = new int[capacity];
+        int batch = Math.min(capacity, BATCH_SIZE);
+        batchTimes = new long[batch];
+        batchRows = new double[batch][width];
+        batchWidths = new int[batch];
+    }
+
+    public int getCapacity() {
+        return times.length;
+    }
+
+    public Overflow getOverflow() {
+        return overflow;
+    }
+
+    /**
+     * Appends a row with the first count values of the array, which can be
+     * reused by the caller after the call. Returns false if closed.
+     */
+    public boolean offer(long time, double[] values, int count) {
+        return offer(time, values, count, overflow);
+    }
+
+    /**
+     * Appends a row from a thread that must never wait, such as a channel
+     * access callback: the block policy falls back to coalescing.
+     */
+    public boolean offerNow(long time, double[] values, int count) {
+        return offer(time, values, count, (overflow == Overflow.block) ? Overflow.coalesce : overflow);
+    }
+
+    /**
+     * Appends a row applying the given overflow policy instead of the queue
+     * one: producers that must not lose rows block, those that must not wait
+     * drop or coalesce.
+     */
+    public synchronized boolean offer(long time, double[] values, int count, Overflow overflow) {
+        lastTime = time;
+        if (closed) {
+            discarded++;
+            return false;
+        }
+        offered++;
+        if (size == times.length) {
+            switch (overflow) {
+                case coalesce:
+                    write(physical(size - 1), time, values, count);
+                    coalesced++;
+                    return true;
+                case block:
+                    blocked++;
+                    while ((size == times.length) && !closed) {
+                        try {
+                            wait();
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            return false;
+                        }
+                    }
+                    if (closed) {
+                        discarded++;
+                        return false;
+                    }
+                    break;
+                default:
+                    head = physical(1);
+                    size--;
+                    dropped++;
+            }
+        }
+        write(physical(size), time, values, count);
+        size++;
+        maxSize = Math.max(maxSize, size);
+        return true;
+    }
+
+    void write(int index, long time, double[] values, int count) {
+        count = Math.min(count, rows[index].length);
+        times[index] = time;
+        System.arraycopy(values, 0, rows[index], 0, count);
+        widths[index] = count;
+    }
+
+    int physical(int index) {
+        int ret = head + index;
+        return (ret >= times.length) ? ret - times.length : ret;
+    }
+
+    /**
+     * Passes all queued rows to the consumer, in batches copied out of the
+     * ring so that producers are not held while consuming. Must be called
+     * from a single thread. Returns the number of rows drained.
+     */
+    public int drain(Consumer consumer) {
+        int ret = 0;
+        while (true) {
+            int count;
+            synchronized (this) {
+                count = Math.min(size, batchTimes.length);
+                for (int i = 0; i < count; i++) {
+                    int index = physical(i);
+                    batchTimes[i] = times[index];
+                    batchWidths[i] = widths[index];
+                    System.arraycopy(rows[index], 0, batchRows[i], 0, widths[index]);
+                }
+                head = physical(count);
+                size -= count;
+                drained += count;
+                if ((count > 0) && (blocked > 0)) {
+                    notifyAll();
+                }
+            }
+            if (count == 0) {
+                return ret;
+            }
+            for (int i = 0; i < count; i++) {
+                consumer.accept(batchTimes[i], getBatchValues(i));
+            }
+            ret += count;
+        }
+    }
+
+    //Arrays of the row width, reused between drains
+    double[] getBatchValues(int index) {
+        int width = batchWidths[index];
+        if (width == batchRows[index].length) {
+            return batchRows[index];
+        }
+        if (batchValues.length <= width) {
+            batchValues = new double[batchRows[index].length + 1][];
+        }
+        if (batchValues[width] == null) {
+            batchValues[width] = new double[width];
+        }
+        System.arraycopy(batchRows[index], 0, batchValues[width], 0, width);
+        return batchValues[width];
+    }
+
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+        notifyAll();
+    }
+
+    /**
+     * Discards the queued rows and releases blocked producers, which fail
+     * from then on.
+     */
+    public synchronized void close() {
+        closed = true;
+        discarded += size;
+        clear();
+    }
+
+    /**
+     * Rows lost because the queue was closed: queued or offered afterwards.
+     */
+    public synchronized long getDiscarded() {
+        return discarded;
+    }
+
+    /**
+     * Time of the last row offered, accepted or not.
+     */
+    public synchronized long getLastTime() {
+        return lastTime;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Queue: " + size + "/" + times.length + " (max " + maxSize + ") overflow=" + overflow
+                + "\nOffered: " + offered
+                + "\nDrained: " + drained
+                + "\nDropped: " + dropped
+                + "\nCoalesced: " + coalesced
+                + "\nBlocked: " + blocked
+                + "\nDiscarded: " + discarded;
+    }
+}
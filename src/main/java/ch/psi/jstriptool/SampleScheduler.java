@@ -0,0 +1,159 @@
+package ch.psi.jstriptool;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the sampling at ideal tick times start + k * period, computed from the
+ * monotonic clock so that delays do not accumulate. Ticks missed because of a
+ * pause or a slow sample are skipped or back-filled according to the policy:
+ * back-filled ticks are stamped with their scheduled time, and at most
+ * maxFill of them are run, older ones being skipped.
+ * Samples can be stamped with the scheduled tick time, giving a regular time
+ * grid, or with the time they were taken. The lateness of every tick is
+ * recorded in a histogram.
+ */
+public class SampleScheduler {
+
+    static final Logger logger = Logger.getLogger(SampleScheduler.class.getName());
+
+    public enum Missed {
+        skip,   //Resumes at the next tick
+        fill    //Runs the missed ticks immediately
+    }
+
+    /**
+     * Sampling task: time is the sample epoch time in ns.
+     */
+    public interface Task {
+
+        void run(long time);
+    }
+
+    static final long SPIN_NANOS = 50000; //Busy wait before the tick, finer than parking
+    static final int HISTOGRAM_SIZE = 32;
+
+    final long period;
+    final Missed missed;
+    final boolean tickTime;
+    final Task task;
+    final Thread thread;
+    volatile boolean closed;
+    volatile long maxFill = Long.MAX_VALUE;
+    long firstTick;
+
+    //Statistics
+    final long[] histogram = new long[HISTOGRAM_SIZE]; //Lateness: bin i < 2^i us
+    long ticks;
+    long skipped;
+    long filled;
+    long maxLateness;
+
+    public SampleScheduler(double interval, Missed missed, boolean tickTime, Task task) {
+        period = Math.max((long) (interval * 1e9), 1);
+        this.missed = (missed == null) ? Missed.skip : missed;
+        this.tickTime = tickTime;
+        this.task = task;
+        thread = new Thread(() -> {
+            run();
+        }, "Sample scheduler");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    /**
+     * Limits the back-fill to the ticks the plot can hold.
+     */
+    public void setMaxFill(long ticks) {
+        maxFill = Math.max(ticks, 0);
+    }
+
+    public void start(boolean triggerImmediately) {
+        firstTick = triggerImmediately ? 0 : 1;
+        thread.start();
+    }
+
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+    }
+
+    void run() {
+        //Epoch of the monotonic clock origin
+        long epoch = PlotFrame.currentTimeNanos() - System.nanoTime();
+        long start = System.nanoTime();
+        long tick = firstTick;
+        while (!closed) {
+            long scheduled = start + tick * period;
+            long wait;
+            while (((wait = scheduled - System.nanoTime()) > 0) && !closed) {
+                if (wait > SPIN_NANOS) {
+                    LockSupport.parkNanos(wait - SPIN_NANOS);
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+            if (closed) {
+                break;
+            }
+            long now = System.nanoTime();
+            record(now - scheduled);
+            long behind = (now - scheduled) / period; //Ticks missed
+            if (behind > 0) {
+                long fill = (missed == Missed.fill) ? Math.min(behind, maxFill) : 0;
+                if (behind > fill) {
+                    synchronized (this) {
+                        skipped += behind - fill;
+                    }
+                    tick += behind - fill;
+                    scheduled += (behind - fill) * period;
+                }
+                long i = 0;
+                for (; (i < fill) && !closed; i++) {
+                    //Missed ticks are stamped when they were due, not all at once
+                    execute(epoch + scheduled);
+                    scheduled += period;
+                    tick++;
+                }
+                synchronized (this) {
+                    filled += i;
+                }
+            }
+            execute(tickTime ? epoch + scheduled : epoch + System.nanoTime());
+            tick++;
+        }
+    }
+
+    void execute(long time) {
+        try {
+            task.run(time);
+        } catch (Exception ex) {
+            logger.log(Level.FINE, null, ex);
+        }
+    }
+
+    synchronized void record(long lateness) {
+        ticks++;
+        maxLateness = Math.max(maxLateness, lateness);
+        long us = Math.max(lateness / 1000, 0);
+        int bin = 64 - Long.numberOfLeadingZeros(us);
+        histogram[Math.min(bin, HISTOGRAM_SIZE - 1)]++;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Ticks: ").append(ticks).append(" (period ").append(period / 1e3).append("us)");
+        sb.append("\nSkipped: ").append(skipped);
+        sb.append("\nFilled: ").append(filled);
+        sb.append("\nMax lateness: ").append(maxLateness / 1e3).append("us");
+        sb.append("\nLateness histogram:");
+        for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+            if (histogram[i] > 0) {
+                sb.append("\n  < ").append(1L << i).append("us: ").append(histogram[i]);
+            }
+        }
+        return sb.toString();
+    }
+}
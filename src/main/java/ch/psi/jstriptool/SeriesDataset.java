@@ -0,0 +1,299 @@
+package ch.psi.jstriptool;
+
+import java.util.List;
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYDomainInfo;
+import org.jfree.data.xy.XYRangeInfo;
+
+/**
+ * Single-series XYDataset reading directly from a SampleBuffer column: X values
+ * are epoch milliseconds, with the sub-millisecond part of the buffer
+ * nanosecond times as fraction, NaN values are gaps. If decimation is enabled the
+ * dataset exposes only the points selected by the Decimator.
+ * Data bounds are provided without scanning the items: the full range from a
+ * RangeTracker and the range of a domain interval from the Pyramid.
+ * For drawing in a background thread the visible items are published as an
+ * immutable Snapshot, which is what the render thread reads.
+ */
+public class SeriesDataset extends AbstractXYDataset implements DomainInfo, RangeInfo, XYDomainInfo, XYRangeInfo {
+
+    /**
+     * Immutable copy of the items in a domain interval.
+     */
+    static class Snapshot {
+
+        final double[] x;
+        final double[] y;
+
+        Snapshot(double[] x, double[] y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    static final Snapshot EMPTY_SNAPSHOT = new Snapshot(new double[0], new double[0]);
+
+    final Comparable key;
+    final SampleBuffer buffer;
+    final SampleBuffer.Column column;
+    final Pyramid pyramid;
+    final Decimator decimator;
+    final RangeTracker tracker;
+    boolean removed;
+    boolean notify;
+    volatile Snapshot published;
+    Snapshot rendering;
+    Thread renderingThread;
+
+    public SeriesDataset(Comparable key, SampleBuffer buffer, SampleBuffer.Column column) {
+        this.key = key;
+        this.buffer = buffer;
+        this.column = column;
+        pyramid = new Pyramid(buffer, column);
+        decimator = new Decimator(buffer, column, pyramid);
+        tracker = new RangeTracker(buffer, column);
+    }
+
+    public SampleBuffer getBuffer() {
+        return buffer;
+    }
+
+    public SampleBuffer.Column getColumn() {
+        return column;
+    }
+
+    /**
+     * Detaches the series: the dataset is kept by the plot but reports no data.
+     */
+    void remove() {
+        removed = true;
+        buffer.removeColumn(column);
+    }
+
+    /**
+     * Sets the decimation bucket width in ns: 0 to disable.
+     */
+    void setDecimation(long width) {
+        decimator.setWidth(width);
+    }
+
+    /**
+     * Publishes the items in the domain interval, plus the adjacent ones so
+     * that lines reach the borders.
+     */
+    void publish(Range domain) {
+        int count = getItemCount(0);
+        int from = searchItem(count, domain.getLowerBound());
+        int to = searchItem(count, Math.nextUp(domain.getUpperBound()));
+        from = Math.max(from - 1, 0);
+        to = Math.min(to + 1, count);
+        double[] x = new double[Math.max(to - from, 0)];
+        double[] y = new double[x.length];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = getXValue(0, from + i);
+            y[i] = getYValue(0, from + i);
+        }
+        published = new Snapshot(x, y);
+    }
+
+    /**
+     * Index of the first item with X not lower than the argument.
+     */
+    int searchItem(int count, double x) {
+        int from = 0;
+        int to = count;
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (getXValue(0, mid) < x) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Makes the calling thread read the published snapshot.
+     */
+    void acquireSnapshot() {
+        Snapshot snapshot = published;
+        rendering = (snapshot == null) ? EMPTY_SNAPSHOT : snapshot;
+        renderingThread = Thread.currentThread();
+    }
+
+    void releaseSnapshot() {
+        renderingThread = null;
+        rendering = null;
+    }
+
+    Snapshot getSnapshot() {
+        return (renderingThread == Thread.currentThread()) ? rendering : null;
+    }
+
+    void setNotifyOnAppend(boolean value) {
+        notify = value;
+    }
+
+    /**
+     * Appends a value at the time in ns.
+     */
+    void append(long time, double value) {
+        buffer.append(time, column, value);
+        onAppended();
+    }
+
+    /**
+     * Called after rows were appended to a shared buffer.
+     */
+    void onAppended() {
+        if (notify) {
+            fireDatasetChanged();
+        }
+    }
+
+    void clear() {
+        buffer.clear();
+        if (notify) {
+            fireDatasetChanged();
+        }
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return removed ? 0 : 1;
+    }
+
+    @Override
+    public Comparable getSeriesKey(int series) {
+        return key;
+    }
+
+    @Override
+    public DomainOrder getDomainOrder() {
+        return DomainOrder.ASCENDING;
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        Snapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.x.length;
+        }
+        if (decimator.isEnabled()) {
+            decimator.update();
+            return decimator.getItemCount();
+        }
+        return buffer.size();
+    }
+
+    int getIndex(int item) {
+        return decimator.isEnabled() ? decimator.getIndex(item) : item;
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return getXValue(series, item);
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        Snapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.x[item];
+        }
+        return buffer.getMillis(getIndex(item));
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        double value = getYValue(series, item);
+        return Double.isNaN(value) ? null : value;
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        Snapshot snapshot = getSnapshot();
+        if (snapshot != null) {
+            return snapshot.y[item];
+        }
+        return buffer.getValue(column, getIndex(item));
+    }
+
+    @Override
+    public double getDomainLowerBound(boolean includeInterval) {
+        Range range = getDomainBounds(includeInterval);
+        return (range == null) ? Double.NaN : range.getLowerBound();
+    }
+
+    @Override
+    public double getDomainUpperBound(boolean includeInterval) {
+        Range range = getDomainBounds(includeInterval);
+        return (range == null) ? Double.NaN : range.getUpperBound();
+    }
+
+    @Override
+    public Range getDomainBounds(boolean includeInterval) {
+        if (removed || (buffer.size() == 0)) {
+            return null;
+        }
+        return new Range(buffer.getMillis(0), buffer.getMillis(buffer.size() - 1));
+    }
+
+    @Override
+    public Range getDomainBounds(List visibleSeriesKeys, boolean includeInterval) {
+        return visibleSeriesKeys.contains(key) ? getDomainBounds(includeInterval) : null;
+    }
+
+    @Override
+    public double getRangeLowerBound(boolean includeInterval) {
+        Range range = getRangeBounds(includeInterval);
+        return (range == null) ? Double.NaN : range.getLowerBound();
+    }
+
+    @Override
+    public double getRangeUpperBound(boolean includeInterval) {
+        Range range = getRangeBounds(includeInterval);
+        return (range == null) ? Double.NaN : range.getUpperBound();
+    }
+
+    @Override
+    public Range getRangeBounds(boolean includeInterval) {
+        if (removed) {
+            return null;
+        }
+        tracker.update();
+        double min = tracker.getMin();
+        return Double.isNaN(min) ? null : new Range(min, tracker.getMax());
+    }
+
+    /**
+     * Range of the values with X in xRange (inclusive).
+     */
+    @Override
+    public Range getRangeBounds(List visibleSeriesKeys, Range xRange, boolean includeInterval) {
+        if (removed || (buffer.size() == 0) || !visibleSeriesKeys.contains(key)) {
+            return null;
+        }
+        int size = buffer.size();
+        if ((xRange.getLowerBound() <= buffer.getMillis(0)) && (xRange.getUpperBound() >= buffer.getMillis(size - 1))) {
+            return getRangeBounds(includeInterval);
+        }
+        int from = buffer.search(0, size, xRange.getLowerBound() * 1e6);
+        int to = buffer.search(from, size, Math.nextUp(xRange.getUpperBound() * 1e6));
+        if (from >= to) {
+            return null;
+        }
+        pyramid.update();
+        long first = buffer.getFirstSequence();
+        pyramid.query(first + from, first + to);
+        if (pyramid.getMin() < 0) {
+            return null;
+        }
+        return new Range(buffer.getValue(column, (int) (pyramid.getMin() - first)), buffer.getValue(column, (int) (pyramid.getMax() - first)));
+    }
+}
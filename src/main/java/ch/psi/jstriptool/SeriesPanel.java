@@ -4,6 +4,7 @@ import java.awt.Color;
 import java.awt.Font;
 import javax.swing.BorderFactory;
 import javax.swing.GroupLayout;
+import javax.swing.SwingUtilities;
 import static javax.swing.border.TitledBorder.DEFAULT_POSITION;
 import static javax.swing.border.TitledBorder.LEADING;
 
@@ -65,7 +66,17 @@ public class SeriesPanel extends javax.swing.JPanel {
             }
             desc = series.desc == null ? "" : series.desc;
             if (desc.isEmpty()){
-                 desc = Config.getChannelDesc(App.plotFrame.context, name);
+                String requested = name;
+                App.getMetadataCache().getDesc(App.plotFrame.getContext(), name).thenAccept(value -> {
+                    SwingUtilities.invokeLater(() -> {
+                        //The panel may have been reinitialized meanwhile
+                        if (requested.equals(name) && (value != null) && !value.equals(desc)) {
+                            desc = value;
+                            currentDisplayValue = null;
+                            update();
+                        }
+                    });
+                });
             }
             textInfo.setForeground(series.getColor());
             setToolTipText(name);
@@ -76,6 +76,13 @@ public class SeriesSetPanel extends javax.swing.JPanel {
     }    
     
     
+    public void moveSeries(int from, int to){
+        SeriesPanel panel = getSeriesPanels()[from];
+        scrollPanel.remove(from);
+        scrollPanel.add(panel, to);
+        updateUI();
+    }
+
     public void updateSeries(int index){
         getSeriesPanels()[index].initialize();        
     }
@@ -0,0 +1,114 @@
+package ch.psi.jstriptool;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latest value of each curve, written by the monitor callback threads and
+ * read by the sampler without locking. Writers address a slot, which is
+ * stable for the life of the curve, while readers address the curve index.
+ * Slots are numbered again after clear: writers pass the epoch read when the
+ * slot was added, so that late writes to a cleared slot are dropped.
+ */
+public class ValueSlots<T> {
+
+    static class Table<T> {
+
+        final AtomicReferenceArray<T> values;
+        final int epoch;
+
+        Table(int length, int epoch) {
+            values = new AtomicReferenceArray<>(length);
+            this.epoch = epoch;
+        }
+    }
+
+    volatile Table<T> table = new Table<>(16, 0);
+    volatile int[] slots = new int[0]; //Slot of each curve index
+    int next; //Slots are not reused until cleared
+
+    /**
+     * Appends a curve, returning its slot.
+     */
+    public synchronized int add(T value) {
+        Table<T> t = table;
+        if (next == t.values.length()) {
+            Table<T> grown = new Table<>(2 * next, t.epoch);
+            for (int i = 0; i < next; i++) {
+                grown.values.set(i, t.values.get(i));
+            }
+            table = grown;
+            t = grown;
+        }
+        int slot = next++;
+        t.values.set(slot, value);
+        int[] s = new int[slots.length + 1];
+        System.arraycopy(slots, 0, s, 0, slots.length);
+        s[slots.length] = slot;
+        slots = s;
+        return slot;
+    }
+
+    public synchronized void remove(int index) {
+        int[] s = new int[slots.length - 1];
+        System.arraycopy(slots, 0, s, 0, index);
+        System.arraycopy(slots, index + 1, s, index, s.length - index);
+        slots = s;
+    }
+
+    /**
+     * Moves a curve to another index, keeping its slot and value.
+     */
+    public synchronized void move(int from, int to) {
+        int[] s = slots.clone();
+        int slot = s[from];
+        if (from < to) {
+            System.arraycopy(s, from + 1, s, from, to - from);
+        } else {
+            System.arraycopy(s, to, s, to + 1, from - to);
+        }
+        s[to] = slot;
+        slots = s;
+    }
+
+    public synchronized void clear() {
+        slots = new int[0];
+        table = new Table<>(16, table.epoch + 1);
+        next = 0;
+    }
+
+    /**
+     * Incremented by clear.
+     */
+    public int getEpoch() {
+        return table.epoch;
+    }
+
+    public int size() {
+        return slots.length;
+    }
+
+    public int getSlot(int index) {
+        return slots[index];
+    }
+
+    /**
+     * Lock-free write of the value of a slot added in the epoch: retried if
+     * the table is replaced meanwhile.
+     */
+    public void set(int slot, int epoch, T value) {
+        Table<T> t;
+        do {
+            //If the table was grown or cleared meanwhile the write may have been lost in the copy
+            t = table;
+            if ((t.epoch != epoch) || (slot >= t.values.length())) {
+                return; //Cleared
+            }
+            t.values.set(slot, value);
+        } while (t != table);
+    }
+
+    public T get(int index) {
+        int slot = slots[index];
+        return table.values.get(slot);
+    }
+}
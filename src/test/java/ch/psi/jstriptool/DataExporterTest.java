@@ -0,0 +1,83 @@
+package ch.psi.jstriptool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class DataExporterTest {
+
+    static String format(double value, int precision) throws IOException {
+        DataExporter exporter = new DataExporter(false, new PlotSeries[0], new long[0][], new double[0][]);
+        exporter.buffer = ByteBuffer.allocate(1024);
+        exporter.writeFixed(value, precision);
+        return new String(exporter.buffer.array(), 0, exporter.buffer.position(), StandardCharsets.US_ASCII);
+    }
+
+    static void check(double value, int precision) throws IOException {
+        String expected = String.format(Locale.ROOT, "%1." + precision + "f", value);
+        assertEquals("value=" + value + " precision=" + precision, expected, format(value, precision));
+    }
+
+    @Test
+    public void testRoundingBoundaries() throws IOException {
+        double[] values = {0.5, 1.5, 2.5, -0.5, -2.5, 0.125, 0.375, -0.125, 2.675, 1.005, 1.0049999999,
+            0.045, 0.995, 9.995, 99.995, -9.995, 0.05, 0.15, 0.25, 0.35, 1e-7, 4.9999999e-7, 5e-7,
+            123456.7895, 0.0000005, -0.0000005};
+        for (double value : values) {
+            for (int precision = 0; precision <= 8; precision++) {
+                check(value, precision);
+                check(Math.nextUp(value), precision);
+                check(Math.nextDown(value), precision);
+            }
+        }
+    }
+
+    @Test
+    public void testSpecialValues() throws IOException {
+        double[] values = {0.0, -0.0, -0.001, -1e-300, Double.MIN_VALUE, Double.NaN,
+            Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (double value : values) {
+            for (int precision = 0; precision <= 6; precision++) {
+                check(value, precision);
+            }
+        }
+    }
+
+    @Test
+    public void testFastPathLimit() throws IOException {
+        //Scaled values around the limit of the integer formatting
+        for (int precision = 0; precision <= 9; precision++) {
+            double limit = DataExporter.MAX_FAST_SCALED / DataExporter.POW10[precision];
+            check(limit, precision);
+            check(Math.nextDown(limit), precision);
+            check(-Math.nextDown(limit), precision);
+            check(limit * 10, precision);
+        }
+        check(999_999_999.5, 0);
+        check(999_999_999.4, 0);
+        check(1e15, 2);
+        check(-1.5e18, 3);
+    }
+
+    @Test
+    public void testNegativePrecision() throws IOException {
+        assertEquals(String.format(Locale.ROOT, "%1.0f", 2.4), format(2.4, -1));
+    }
+
+    @Test
+    public void testRandomValues() throws IOException {
+        Random random = new Random(0);
+        for (int i = 0; i < 100_000; i++) {
+            int precision = random.nextInt(10);
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 4);
+            check(value, precision);
+            //Exact decimal ties at the precision
+            double tie = (Math.floor(value * DataExporter.POW10[precision]) + 0.5) / DataExporter.POW10[precision];
+            check(tie, precision);
+        }
+    }
+}
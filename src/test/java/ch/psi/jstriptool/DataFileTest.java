@@ -0,0 +1,188 @@
+package ch.psi.jstriptool;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DataFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    static PlotSeries[] createSeries() {
+        return new PlotSeries[]{
+            new PlotSeries("A:VAL", Color.RED, 3, -1.0, 1.0, "mm", "first", false, 1, 0),
+            new PlotSeries("B:VAL", null, 0, 1.0, 1000.0, "", "second", true, 2, 0)
+        };
+    }
+
+    static long[] createTimes(int rows) {
+        long[] ret = new long[rows];
+        long time = 1_600_000_000_000_000_000L;
+        for (int i = 0; i < rows; i++) {
+            time += (i % 7 == 0) ? 0 : 1_000_000L * (i % 13) + 17;
+            ret[i] = time;
+        }
+        return ret;
+    }
+
+    static double[] createValues(int rows, double offset) {
+        double[] ret = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            ret[i] = (i % 11 == 0) ? Double.NaN : offset + Math.sin(i) * i;
+        }
+        return ret;
+    }
+
+    Path write(PlotSeries[] series, int[][] groups, long[][] times, double[][][] columns) throws IOException {
+        Path path = folder.newFile("data" + DataFile.EXTENSION).toPath();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataFile.Writer writer = new DataFile.Writer(channel);
+            writer.writeHeader(series, groups);
+            for (int g = 0; g < groups.length; g++) {
+                writer.write(g, times[g], columns[g], 0, times[g].length);
+            }
+            writer.flush();
+            assertEquals(channel.size(), writer.getSize());
+        }
+        return path;
+    }
+
+    @Test
+    public void testSharedRoundTrip() throws IOException {
+        int rows = 3 * DataFile.CHUNK_ROWS + 5;
+        PlotSeries[] series = createSeries();
+        long[] times = createTimes(rows);
+        double[] a = createValues(rows, 0.0);
+        double[] b = createValues(rows, 100.0);
+        Path path = write(series, new int[][]{{0, 1}}, new long[][]{times}, new double[][][]{{a, b}});
+
+        DataFile file = DataFile.open(path);
+        assertTrue(file.isShared());
+        assertEquals(1, file.getGroupCount());
+        assertEquals(4, file.getChunks().size());
+        assertEquals(rows, file.getRows(0));
+        assertEquals(Long.valueOf(times[0]), file.getFirstTime());
+        assertEquals(Long.valueOf(times[rows - 1]), file.getLastTime());
+        assertArrayEquals(times, file.readTimes(0));
+        assertArrayEquals(a, file.readValues(0), 0.0);
+        assertArrayEquals(b, file.readValues(1), 0.0);
+
+        PlotSeries[] read = file.getSeries();
+        assertEquals(series.length, read.length);
+        for (int i = 0; i < series.length; i++) {
+            assertEquals(series[i].getName(), read[i].getName());
+            assertEquals(series[i].getUnits(), read[i].getUnits());
+            assertEquals(series[i].getDesc(), read[i].getDesc());
+            assertEquals(series[i].getPrecision(), read[i].getPrecision());
+            assertEquals(series[i].getRangeMin(), read[i].getRangeMin(), 0.0);
+            assertEquals(series[i].getRangeMax(), read[i].getRangeMax(), 0.0);
+            assertEquals(series[i].isLogaritimic(), read[i].isLogaritimic());
+            assertEquals(series[i].color, read[i].color);
+        }
+    }
+
+    @Test
+    public void testGroupsRoundTrip() throws IOException {
+        int rowsA = DataFile.CHUNK_ROWS + 1;
+        int rowsB = 10;
+        long[] timesA = createTimes(rowsA);
+        long[] timesB = createTimes(rowsB);
+        double[] a = createValues(rowsA, 0.0);
+        double[] b = createValues(rowsB, -5.0);
+        //Second curve first, to check the mapping of curves to groups
+        Path path = write(createSeries(), new int[][]{{1}, {0}}, new long[][]{timesB, timesA}, new double[][][]{{b}, {a}});
+
+        DataFile file = DataFile.open(path);
+        assertFalse(file.isShared());
+        assertEquals(2, file.getGroupCount());
+        assertEquals(1, file.getGroupOf(0));
+        assertEquals(0, file.getGroupOf(1));
+        assertEquals(rowsB, file.getRows(0));
+        assertEquals(rowsA, file.getRows(1));
+        assertArrayEquals(timesB, file.readTimes(0));
+        assertArrayEquals(timesA, file.readTimes(1));
+        assertArrayEquals(a, file.readValues(0), 0.0);
+        assertArrayEquals(b, file.readValues(1), 0.0);
+    }
+
+    @Test
+    public void testTruncatedTail() throws IOException {
+        int rows = 2 * DataFile.CHUNK_ROWS;
+        long[] times = createTimes(rows);
+        double[] a = createValues(rows, 0.0);
+        double[] b = createValues(rows, 1.0);
+        Path path = write(createSeries(), new int[][]{{0, 1}}, new long[][]{times}, new double[][][]{{a, b}});
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            //Cut in the middle of the values of the last chunk, as after a crash
+            channel.truncate(channel.size() - DataFile.CHUNK_ROWS * Double.BYTES - 3);
+        }
+
+        DataFile file = DataFile.open(path);
+        assertEquals(1, file.getChunks().size());
+        assertEquals(DataFile.CHUNK_ROWS, file.getRows(0));
+        assertEquals(Long.valueOf(times[DataFile.CHUNK_ROWS - 1]), file.getLastTime());
+        long[] readTimes = file.readTimes(0);
+        double[] readValues = file.readValues(1);
+        for (int i = 0; i < DataFile.CHUNK_ROWS; i++) {
+            assertEquals(times[i], readTimes[i]);
+            assertEquals(b[i], readValues[i], 0.0);
+        }
+
+        //Cut in the middle of the header of the last chunk
+        DataFile.Chunk first = file.getChunks().get(0);
+        long end = first.valuesPosition + 2L * first.rows * Double.BYTES;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(end + DataFile.CHUNK_HEADER_SIZE / 2);
+        }
+        file = DataFile.open(path);
+        assertEquals(1, file.getChunks().size());
+        assertEquals(DataFile.CHUNK_ROWS, file.getRows(0));
+    }
+
+    @Test
+    public void testVarLong() {
+        long[] values = {0, 1, -1, 63, -64, 64, -65, 127, -128, 1_000_000L, -1_000_000L,
+            Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE + 1};
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * DataFile.MAX_VAR_LONG_SIZE);
+        for (long value : values) {
+            int position = buffer.position();
+            DataFile.putVarLong(buffer, value);
+            assertTrue(buffer.position() - position <= DataFile.MAX_VAR_LONG_SIZE);
+        }
+        buffer.flip();
+        for (long value : values) {
+            assertEquals(value, DataFile.getVarLong(buffer));
+        }
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void testVarLongSize() {
+        //Zig-zag: small negative deltas are as short as small positive ones
+        ByteBuffer buffer = ByteBuffer.allocate(DataFile.MAX_VAR_LONG_SIZE);
+        DataFile.putVarLong(buffer, -64);
+        assertEquals(1, buffer.position());
+        buffer.clear();
+        DataFile.putVarLong(buffer, -65);
+        assertEquals(2, buffer.position());
+    }
+
+    @Test
+    public void testNegativeDeltas() throws IOException {
+        //Rows of a group are not required to be time ordered
+        long[] times = {1000, 999, 0, -5_000_000_000L, Long.MIN_VALUE / 2, 42};
+        double[] values = {1, 2, 3, 4, 5, 6};
+        Path path = write(createSeries(), new int[][]{{0}, {1}}, new long[][]{times, times}, new double[][][]{{values}, {values}});
+        DataFile file = DataFile.open(path);
+        assertArrayEquals(times, file.readTimes(0));
+        assertArrayEquals(times, file.readTimes(1));
+    }
+}
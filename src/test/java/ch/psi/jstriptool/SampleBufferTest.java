@@ -0,0 +1,122 @@
+package ch.psi.jstriptool;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class SampleBufferTest {
+
+    static void checkRows(SampleBuffer buffer, SampleBuffer.Column column, long firstTime, int rows) {
+        assertEquals(rows, buffer.size());
+        long[] times = buffer.copyTimes();
+        double[] values = buffer.copyValues(column);
+        assertEquals(rows, times.length);
+        for (int i = 0; i < rows; i++) {
+            long time = firstTime + i;
+            assertEquals(time, buffer.getTime(i));
+            assertEquals(time, times[i]);
+            assertEquals(time * 0.5, buffer.getValue(column, i), 0.0);
+            assertEquals(time * 0.5, values[i], 0.0);
+        }
+    }
+
+    @Test
+    public void testWrapAround() {
+        int capacity = 5;
+        SampleBuffer buffer = new SampleBuffer(capacity);
+        SampleBuffer.Column column = buffer.addColumn();
+        for (long time = 0; time < 3; time++) {
+            assertTrue(buffer.append(time, time * 0.5));
+        }
+        checkRows(buffer, column, 0, 3);
+        for (long time = 3; time < 17; time++) {
+            assertTrue(buffer.append(time, time * 0.5));
+            assertEquals(Math.min(time + 1, capacity), buffer.size());
+            assertEquals(time + 1, buffer.getSequence());
+            assertEquals(buffer.getSequence() - buffer.size(), buffer.getFirstSequence());
+            checkRows(buffer, column, buffer.getFirstSequence(), buffer.size());
+        }
+        assertEquals(Long.valueOf(12), buffer.getFirstTime());
+        assertEquals(Long.valueOf(16), buffer.getLastTime());
+        assertEquals(12, buffer.getFirstSequence());
+    }
+
+    @Test
+    public void testWrapAroundAfterGrowth() {
+        //The arrays grow from the initial length to the capacity before wrapping
+        int capacity = 3 * SampleBuffer.INITIAL_LENGTH + 7;
+        int rows = 2 * capacity + 11;
+        SampleBuffer buffer = new SampleBuffer(capacity);
+        SampleBuffer.Column column = buffer.addColumn();
+        for (long time = 0; time < rows; time++) {
+            assertTrue(buffer.append(time, time * 0.5));
+        }
+        assertEquals(rows - capacity, buffer.getFirstSequence());
+        checkRows(buffer, column, rows - capacity, capacity);
+    }
+
+    @Test
+    public void testMultipleColumns() {
+        SampleBuffer buffer = new SampleBuffer(4);
+        SampleBuffer.Column a = buffer.addColumn();
+        SampleBuffer.Column b = buffer.addColumn();
+        for (long time = 0; time < 10; time++) {
+            //Each append repeats the last value of the other column
+            assertTrue(buffer.append(time, (time % 2 == 0) ? a : b, time));
+        }
+        assertEquals(4, buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            long time = buffer.getTime(i);
+            double last = (time % 2 == 0) ? buffer.getValue(a, i) : buffer.getValue(b, i);
+            double other = (time % 2 == 0) ? buffer.getValue(b, i) : buffer.getValue(a, i);
+            assertEquals(time, last, 0.0);
+            assertEquals(time - 1, other, 0.0);
+        }
+        assertTrue(buffer.append(10, new double[]{1.0, 2.0}));
+        assertArrayEquals(new double[]{6, 8, 8, 1}, buffer.copyValues(a), 0.0);
+        assertArrayEquals(new double[]{7, 7, 9, 2}, buffer.copyValues(b), 0.0);
+    }
+
+    @Test
+    public void testUpdateAndReject() {
+        SampleBuffer buffer = new SampleBuffer(3);
+        SampleBuffer.Column column = buffer.addColumn();
+        for (long time = 0; time < 4; time++) {
+            assertTrue(buffer.append(time * 10, time));
+        }
+        long sequence = buffer.getSequence();
+        //Same time: the last row is updated in place
+        assertTrue(buffer.append(30, 5.0));
+        assertEquals(3, buffer.size());
+        assertEquals(sequence, buffer.getSequence());
+        assertEquals(1, buffer.getUpdates());
+        assertEquals(5.0, buffer.getValue(column, 2), 0.0);
+        //Older time: rejected
+        assertFalse(buffer.append(29, 6.0));
+        assertEquals(sequence, buffer.getSequence());
+        assertArrayEquals(new long[]{10, 20, 30}, buffer.copyTimes());
+        assertArrayEquals(new double[]{1, 2, 5}, buffer.copyValues(column), 0.0);
+    }
+
+    @Test
+    public void testSetCapacity() {
+        SampleBuffer buffer = new SampleBuffer(8);
+        SampleBuffer.Column column = buffer.addColumn();
+        for (long time = 0; time < 13; time++) {
+            buffer.append(time, time * 0.5);
+        }
+        //Shrinking a wrapped buffer keeps the newest rows
+        buffer.setCapacity(3);
+        assertEquals(10, buffer.getFirstSequence());
+        checkRows(buffer, column, 10, 3);
+        buffer.append(13, 6.5);
+        checkRows(buffer, column, 11, 3);
+        buffer.setCapacity(6);
+        for (long time = 14; time < 20; time++) {
+            buffer.append(time, time * 0.5);
+        }
+        checkRows(buffer, column, 14, 6);
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertNull(buffer.getFirstTime());
+    }
+}